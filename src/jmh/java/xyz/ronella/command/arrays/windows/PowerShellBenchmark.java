@@ -0,0 +1,116 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of the PowerShell command array generation.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerShellBenchmark {
+
+    @Param({"1", "20"})
+    private int argCount;
+
+    private List<String> plainArgs;
+    private List<String> literalArgs;
+    private List<String> rawArgs;
+    private List<String> headers;
+    private String script;
+    private PowerShell adminCommand;
+
+    @Setup
+    public void setup() {
+        plainArgs = new ArrayList<>();
+        literalArgs = new ArrayList<>();
+        rawArgs = new ArrayList<>();
+        headers = new ArrayList<>();
+
+        for (int idx = 0; idx < argCount; idx++) {
+            plainArgs.add(String.format("C:\\Temp\\file-%d.txt", idx));
+            literalArgs.add(String.format("literal:-Arg%d", idx));
+            rawArgs.add(String.format("'C:\\Temp\\file-%d.txt'", idx));
+            headers.add(String.format("$ErrorActionPreference%d = 'Stop'", idx));
+        }
+
+        script = String.join("\n", headers);
+        adminCommand = adminBuilder().build();
+    }
+
+    private PowerShell.PowerShellBuilder adminBuilder() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addAdminModeHeaders(headers)
+                .addArgs(plainArgs)
+                .setAdminMode(true);
+    }
+
+    @Benchmark
+    public PowerShell buildPlain() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArgs(plainArgs)
+                .build();
+    }
+
+    @Benchmark
+    public PowerShell buildLiteral() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("literal:-Command")
+                .addArgs(literalArgs)
+                .build();
+    }
+
+    @Benchmark
+    public PowerShell buildRaw() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArgs(rawArgs)
+                .setRawArgs(true)
+                .build();
+    }
+
+    @Benchmark
+    public PowerShell buildEncoded() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg(script)
+                .build();
+    }
+
+    @Benchmark
+    public PowerShell buildAdminMode() {
+        return adminBuilder().build();
+    }
+
+    @Benchmark
+    public String getValue() {
+        return PowerShell.getValue("literal:-Command");
+    }
+
+    @Benchmark
+    public String encodeText() {
+        return PowerShell.encodeText(script);
+    }
+
+    @Benchmark
+    public String[] getCommand() {
+        return adminCommand.getCommand();
+    }
+}
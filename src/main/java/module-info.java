@@ -4,6 +4,7 @@
 module xyz.ronella.casual.command.arrays {
     requires xyz.ronella.casual.trivial;
     requires java.management;
+    requires static jdk.jfr;
 
     exports xyz.ronella.command.arrays.windows;
 }
\ No newline at end of file
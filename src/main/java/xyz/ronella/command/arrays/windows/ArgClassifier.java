@@ -0,0 +1,170 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * A regex free classifier of the PowerShell arguments.
+ * Each check is a single pass on the argument and doesn't create any intermediate string.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class ArgClassifier {
+
+    /**
+     * The prefix that marks the argument as literal (i.e. case insensitive).
+     */
+    public static final String LITERAL_PREFIX = "literal:";
+
+    private static final String RAW_PREFIXES = "\"'&{";
+    private static final char CHAR_NEXT_LINE = '\u0085';
+    private static final char CHAR_LINE_SEPARATOR = '\u2028';
+    private static final char CHAR_PARAGRAPH_SEPARATOR = '\u2029';
+
+    /**
+     * The type of an argument.
+     */
+    enum ArgType {
+        /**
+         * Must be used as is.
+         */
+        RAW,
+        /**
+         * Has the literal prefix.
+         */
+        LITERAL,
+        /**
+         * Must be quoted.
+         */
+        PLAIN
+    }
+
+    private ArgClassifier() {
+    }
+
+    private static boolean isNewLine(final char chr) {
+        return chr == '\n' || chr == '\r';
+    }
+
+    private static boolean isLineTerminator(final char chr, final boolean singleLine) {
+        final boolean output;
+        if (isNewLine(chr)) {
+            output = !singleLine;
+        }
+        else {
+            output = chr == CHAR_NEXT_LINE || chr == CHAR_LINE_SEPARATOR || chr == CHAR_PARAGRAPH_SEPARATOR;
+        }
+        return output;
+    }
+
+    private static boolean hasNoLineTerminator(final String text, final int start, final boolean singleLine) {
+        boolean output = true;
+        for (int idx = start; idx < text.length() && output; idx++) {
+            output = !isLineTerminator(text.charAt(idx), singleLine);
+        }
+        return output;
+    }
+
+    private static boolean hasLiteralPrefix(final String text) {
+        boolean output = text.length() >= LITERAL_PREFIX.length();
+        for (int idx = 0; idx < LITERAL_PREFIX.length() && output; idx++) {
+            final char chr = text.charAt(idx);
+            final char prefixChr = LITERAL_PREFIX.charAt(idx);
+            output = chr == prefixChr || Character.isLetter(prefixChr) && chr == Character.toUpperCase(prefixChr);
+        }
+        return output;
+    }
+
+    /**
+     * Checks if the text is literal prefixed.
+     * @param text The text to check.
+     * @return True when the text is literal prefixed and has no line terminator.
+     */
+    public static boolean isLiteral(final String text) {
+        return hasLiteralPrefix(text) && hasNoLineTerminator(text, LITERAL_PREFIX.length(), false);
+    }
+
+    /**
+     * Checks if the text is literal prefixed after converting its new lines to spaces.
+     * @param text The text to check.
+     * @return True when the text is literal prefixed.
+     */
+    public static boolean isSingleLineLiteral(final String text) {
+        return hasLiteralPrefix(text) && hasNoLineTerminator(text, LITERAL_PREFIX.length(), true);
+    }
+
+    private static boolean hasRawPrefix(final String text) {
+        return !text.isEmpty() && RAW_PREFIXES.indexOf(text.charAt(0)) > -1;
+    }
+
+    /**
+     * Checks if the text starts with any of the raw prefixes (i.e. " ' &amp; {).
+     * @param text The text to check.
+     * @return True when the text is raw prefixed and has no line terminator.
+     */
+    public static boolean isRaw(final String text) {
+        return hasRawPrefix(text) && hasNoLineTerminator(text, 1, false);
+    }
+
+    /**
+     * Checks if the text starts with any of the raw prefixes (i.e. " ' &amp; {) after converting its new lines
+     * to spaces.
+     * @param text The text to check.
+     * @return True when the text is raw prefixed.
+     */
+    public static boolean isSingleLineRaw(final String text) {
+        return hasRawPrefix(text) && hasNoLineTerminator(text, 1, true);
+    }
+
+    /**
+     * Removes the literal prefix of the text.
+     * @param text The value that potentially has prefix.
+     * @return A clean text.
+     */
+    public static String stripLiteral(final String text) {
+        return isLiteral(text) ? text.substring(LITERAL_PREFIX.length()) : text;
+    }
+
+    private static boolean isQuote(final char chr) {
+        return chr == '"' || chr == '\'';
+    }
+
+    /**
+     * Checks if the processed argument is the flag regardless of its case and of its surrounding quotes
+     * (e.g. "-EncodedCommand" or """-EncodedCommand""").
+     * @param arg The processed argument to check.
+     * @param flag The flag to match (e.g. -EncodedCommand).
+     * @return True when the argument is the flag.
+     */
+    public static boolean isFlag(final String arg, final String flag) {
+        boolean output = false;
+        if (null != arg) {
+            int start = 0;
+            int end = arg.length();
+            while (end - start > flag.length() && isQuote(arg.charAt(start))
+                    && arg.charAt(start) == arg.charAt(end - 1)) {
+                start++;
+                end--;
+            }
+            output = end - start == flag.length() && arg.regionMatches(true, start, flag, 0, flag.length());
+        }
+        return output;
+    }
+
+    /**
+     * Classifies an argument of the command.
+     * @param arg The argument to classify.
+     * @return The type of the argument.
+     */
+    public static ArgType classify(final String arg) {
+        final ArgType output;
+        if (isSingleLineRaw(arg)) {
+            output = ArgType.RAW;
+        }
+        else if (isSingleLineLiteral(arg)) {
+            output = ArgType.LITERAL;
+        }
+        else {
+            output = ArgType.PLAIN;
+        }
+        return output;
+    }
+}
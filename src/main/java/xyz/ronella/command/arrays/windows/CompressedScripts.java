@@ -0,0 +1,90 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the scripts with GZip into a small stub that inflates the script with System.IO.Compression
+ * and runs it in the current scope (i.e. the exit code of the script is preserved).
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class CompressedScripts {
+
+    /**
+     * The text before the Base64 of the compressed script.
+     */
+    public static final String STUB_PREFIX = "$m=New-Object IO.MemoryStream(,[Convert]::FromBase64String('";
+
+    /**
+     * The text after the Base64 of the compressed script.
+     */
+    public static final String STUB_SUFFIX = "'));. ([ScriptBlock]::Create((New-Object IO.StreamReader("
+            + "(New-Object IO.Compression.GZipStream($m,[IO.Compression.CompressionMode]::Decompress)))).ReadToEnd()))";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private CompressedScripts() {
+    }
+
+    private static byte[] gzip(final CharSequence script) {
+        final var bytes = script.toString().getBytes(StandardCharsets.UTF_8);
+        final var output = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (var gzip = new GZIPOutputStream(output, BUFFER_SIZE)) {
+            gzip.write(bytes);
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates the stub that inflates and runs the script.
+     * @param script The script to compress.
+     * @return The stub when it is shorter than the script. Otherwise, the script itself.
+     */
+    public static CharSequence compress(final CharSequence script) {
+        final var payload = Base64.getEncoder().encodeToString(gzip(script));
+        final CharSequence output;
+        if (STUB_PREFIX.length() + payload.length() + STUB_SUFFIX.length() < script.length()) {
+            output = new StringBuilder(STUB_PREFIX.length() + payload.length() + STUB_SUFFIX.length())
+                    .append(STUB_PREFIX).append(payload).append(STUB_SUFFIX);
+        }
+        else {
+            output = script;
+        }
+        return output;
+    }
+
+    /**
+     * Decodes an -EncodedCommand value and inflates it when it is a stub. This does what powershell.exe does
+     * with the stub without running it.
+     * @param encodedCommand The UTF-16LE Base64 text.
+     * @return The original script.
+     */
+    public static String expand(final String encodedCommand) {
+        final var text = new String(Base64.getDecoder().decode(encodedCommand), StandardCharsets.UTF_16LE);
+        final String output;
+        if (text.startsWith(STUB_PREFIX) && text.endsWith(STUB_SUFFIX)) {
+            final var payload = text.substring(STUB_PREFIX.length(), text.length() - STUB_SUFFIX.length());
+            try (var gzip = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(payload)))) {
+                output = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        else {
+            output = text;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,73 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of the encoded admin mode headers keyed by their content.
+ * The headers of the admin mode script are usually the same large preamble, hence only the Start-Process part
+ * needs to be encoded on every build.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class EncodedHeaderCache {
+
+    /**
+     * The maximum number of distinct headers kept.
+     */
+    public static final int MAX_SIZE = 64;
+
+    private static final Object LOCK = new Object();
+
+    private static final Map<List<String>, Utf16LeBase64Encoder.Prefix> ENTRIES =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<String>, Utf16LeBase64Encoder.Prefix> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+
+    private EncodedHeaderCache() {
+    }
+
+    private static Utf16LeBase64Encoder.Prefix encode(final List<String> headers) {
+        final var text = new StringBuilder(headers.stream().mapToInt(___header -> ___header.length() + 1).sum());
+        headers.forEach(___header -> text.append(___header).append('\n'));
+        return Utf16LeBase64Encoder.prefix(text);
+    }
+
+    /**
+     * Returns the cached encoded headers or encodes and caches them. Each header is followed by a new line.
+     * @param headers The admin mode headers.
+     * @return The encoder state after the headers.
+     */
+    public static Utf16LeBase64Encoder.Prefix getOrEncode(final List<String> headers) {
+        Utf16LeBase64Encoder.Prefix output;
+        synchronized (LOCK) {
+            output = ENTRIES.get(headers);
+        }
+        PowerShellInstrumentation.getInstrumentation().cacheAccessed(EncodedHeaderCache.class.getSimpleName(),
+                null != output);
+        if (null == output) {
+            output = encode(headers);
+            final var key = List.copyOf(headers);
+            synchronized (LOCK) {
+                ENTRIES.put(key, output);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Removes all the cached headers.
+     */
+    public static void invalidateAll() {
+        synchronized (LOCK) {
+            ENTRIES.clear();
+        }
+    }
+}
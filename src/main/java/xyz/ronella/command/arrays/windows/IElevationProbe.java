@@ -0,0 +1,17 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * Must hold the implementation of detecting the elevated mode (i.e. RunAs).
+ *
+ * @since 1.1.0
+ * @author Ron Webb
+ */
+@FunctionalInterface
+public interface IElevationProbe {
+
+    /**
+     * The method that must hold the implementation of detecting the elevated mode.
+     * @return True when running in elevated mode.
+     */
+    boolean isElevated();
+}
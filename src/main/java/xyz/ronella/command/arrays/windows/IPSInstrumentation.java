@@ -0,0 +1,60 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * Must hold the implementation that receives the measurements of the library.
+ * All the methods do nothing by default, hence implement only what is needed.
+ * The methods are called by the thread doing the work, so they must be fast and safe to use between threads.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public interface IPSInstrumentation {
+
+    /**
+     * The way a PowerShell command array was generated.
+     */
+    enum BuildPath {
+        /**
+         * No admin mode was set.
+         */
+        NON_ADMIN,
+        /**
+         * Admin mode was set and the command runs without runAs (i.e. setAdminMode(false) or setPreferNonAdminMode).
+         */
+        ADMIN_MODE_NO_RUNAS,
+        /**
+         * Admin mode was set and the command runs with runAs.
+         */
+        ADMIN_MODE_RUNAS,
+        /**
+         * Admin mode was set and a custom admin mode logic generated the command.
+         */
+        ADMIN_MODE_LOGIC
+    }
+
+    /**
+     * Called after a PowerShell command array was built.
+     * @param path The way the command array was generated.
+     * @param durationNanos How long the build took in nanoseconds.
+     * @param argCount The number of elements of the command array.
+     * @param payloadSize The total length of the -EncodedCommand and -File values.
+     */
+    default void built(final BuildPath path, final long durationNanos, final int argCount, final int payloadSize) {
+    }
+
+    /**
+     * Called after a cache was accessed.
+     * @param cacheName The simple name of the class of the cache.
+     * @param isHit True when the cached value was used.
+     */
+    default void cacheAccessed(final String cacheName, final boolean isHit) {
+    }
+
+    /**
+     * Called after the elevation probe of RunAsChecker was used.
+     * @param isElevated The result of the probe.
+     * @param durationNanos How long the probe took in nanoseconds.
+     */
+    default void elevationChecked(final boolean isElevated, final long durationNanos) {
+    }
+}
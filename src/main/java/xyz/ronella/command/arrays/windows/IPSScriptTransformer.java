@@ -0,0 +1,18 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * Must hold the implementation of changing a script before it is encoded (e.g. PowerShellMinifier).
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface IPSScriptTransformer {
+
+    /**
+     * The method that must hold the implementation of changing the script.
+     * @param script The script of addEncodedArg or an admin mode header.
+     * @return The script to encode. An empty admin mode header is dropped.
+     */
+    String transform(String script);
+}
@@ -0,0 +1,24 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * Must hold the implementation of wrapping a script so that its end can be detected in a session.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface IPSSessionFraming {
+
+    /**
+     * The method that must wrap the script into a single line for the interpreter of the session.
+     * After the script, the line must write a new line and then the marker followed by the exit code as one line to
+     * the standard output, and a new line and then the marker alone as one line to the standard error. The new line
+     * before the marker is removed from the output, so the marker is found even when the output of the script doesn't
+     * end with a new line. An exit in the script must not end the interpreter (e.g. run the script as a child script
+     * file or a subshell).
+     * @param script The script to execute.
+     * @param marker The text that marks the end of the script.
+     * @return The single line to send to the interpreter.
+     */
+    String frame(String script, String marker);
+}
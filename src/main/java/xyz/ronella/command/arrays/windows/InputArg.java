@@ -0,0 +1,199 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * An argument of the command tagged with its kind.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class InputArg {
+
+    /**
+     * The kind of the argument.
+     */
+    enum Kind {
+        /**
+         * An argument added by the addArg/addZArg methods.
+         */
+        NORMAL,
+        /**
+         * An argument added by the addEncodedArg method. Its script is encoded on first use and always used as is.
+         */
+        ENCODED,
+        /**
+         * A named placeholder of an argument of a PowerShellTemplate.
+         */
+        SLOT,
+        /**
+         * Arguments that are only known when the command is built.
+         */
+        DEFERRED
+    }
+
+    private final String script;
+    private final Kind kind;
+    private final Supplier<? extends Collection<String>> deferred;
+    private final boolean isDeferredEncoded;
+    private volatile String value;
+
+    private InputArg(final String value, final String script, final Kind kind) {
+        this.value = value;
+        this.script = script;
+        this.kind = kind;
+        this.deferred = null;
+        this.isDeferredEncoded = false;
+    }
+
+    private InputArg(final Supplier<? extends Collection<String>> deferred, final boolean isDeferredEncoded) {
+        this.script = null;
+        this.kind = Kind.DEFERRED;
+        this.deferred = Objects.requireNonNull(deferred);
+        this.isDeferredEncoded = isDeferredEncoded;
+    }
+
+    /**
+     * Creates a normal argument.
+     * @param value The value of the argument.
+     * @return An instance of InputArg.
+     */
+    public static InputArg normal(final String value) {
+        return new InputArg(Objects.requireNonNull(value), null, Kind.NORMAL);
+    }
+
+    /**
+     * Creates an encoded argument.
+     * @param script The script to encode.
+     * @return An instance of InputArg.
+     */
+    public static InputArg encoded(final String script) {
+        return new InputArg(null, Objects.requireNonNull(script), Kind.ENCODED);
+    }
+
+    /**
+     * Creates a slot.
+     * @param name The name of the slot.
+     * @return An instance of InputArg.
+     */
+    public static InputArg slot(final String name) {
+        return new InputArg(Objects.requireNonNull(name), null, Kind.SLOT);
+    }
+
+    /**
+     * Creates the arguments that are only known when the command is built.
+     * @param values The supplier of the values of the arguments.
+     * @param isEncoded True when the values are scripts to encode.
+     * @return An instance of InputArg.
+     */
+    public static InputArg deferred(final Supplier<? extends Collection<String>> values, final boolean isEncoded) {
+        return new InputArg(values, isEncoded);
+    }
+
+    /**
+     * Checks if the arguments are only known when the command is built.
+     * @return True when the arguments are deferred.
+     */
+    public boolean isDeferred() {
+        return Kind.DEFERRED == kind;
+    }
+
+    /**
+     * Adds the arguments of the supplier of a deferred argument or the argument itself to the target.
+     * @param target The receiver of the arguments.
+     */
+    public void resolveTo(final List<InputArg> target) {
+        if (isDeferred()) {
+            for (final var item : deferred.get()) {
+                target.add(isDeferredEncoded ? encoded(item) : normal(item));
+            }
+        }
+        else {
+            target.add(this);
+        }
+    }
+
+    /**
+     * The value of the argument or the name of the slot. The value of an encoded argument is its encoded script.
+     * @return The value.
+     */
+    public String getValue() {
+        String output = value;
+        if (null == output) {
+            output = PowerShell.encodeText(script);
+            value = output;
+        }
+        return output;
+    }
+
+    /**
+     * The script of an encoded argument.
+     * @return The script or null when the argument is not encoded.
+     */
+    public String getScript() {
+        return script;
+    }
+
+    /**
+     * Checks if the argument is encoded.
+     * @return True when the argument was added by the addEncodedArg method.
+     */
+    public boolean isEncoded() {
+        return Kind.ENCODED == kind;
+    }
+
+    /**
+     * The kind of the argument.
+     * @return The kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Checks if the argument is a slot.
+     * @return True when the argument is a slot.
+     */
+    public boolean isSlot() {
+        return Kind.SLOT == kind;
+    }
+
+    /**
+     * Checks if the argument must be used as is.
+     * @param isRawArgs The setRawArgs of the builder.
+     * @return True when the argument must not be processed.
+     */
+    public boolean isRaw(final boolean isRawArgs) {
+        return isRawArgs || isEncoded();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        boolean output = this == other;
+        if (!output && other instanceof InputArg) {
+            final var otherArg = (InputArg) other;
+            output = kind == otherArg.kind && isDeferredEncoded == otherArg.isDeferredEncoded
+                    && getIdentity().equals(otherArg.getIdentity());
+        }
+        return output;
+    }
+
+    private Object getIdentity() {
+        final Object output;
+        if (isDeferred()) {
+            output = deferred;
+        }
+        else {
+            output = isEncoded() ? script : value;
+        }
+        return output;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getIdentity(), kind);
+    }
+}
@@ -0,0 +1,109 @@
+package xyz.ronella.command.arrays.windows;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The IPSInstrumentation that records the measurements as Java Flight Recorder events.
+ * The events are only committed while a recording with them enabled is running.
+ * When the library is used as a module, the application must also resolve the jdk.jfr module
+ * (e.g. --add-modules jdk.jfr).
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class JfrInstrumentation implements IPSInstrumentation {
+
+    private static final String CATEGORY = "Command Arrays";
+
+    /**
+     * The event of a built PowerShell command array.
+     */
+    @Name("xyz.ronella.command.arrays.Build")
+    @Label("PowerShell Build")
+    @Category(CATEGORY)
+    @Description("A PowerShell command array was built.")
+    static final class BuildEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Build Duration")
+        @Timespan
+        long buildDuration;
+
+        @Label("Argument Count")
+        int argCount;
+
+        @Label("Payload Size")
+        @DataAmount(DataAmount.BYTES)
+        int payloadSize;
+    }
+
+    /**
+     * The event of an accessed cache.
+     */
+    @Name("xyz.ronella.command.arrays.CacheAccess")
+    @Label("Cache Access")
+    @Category(CATEGORY)
+    @Description("A cache of the library was accessed.")
+    static final class CacheAccessEvent extends Event {
+        @Label("Cache")
+        String cacheName;
+
+        @Label("Hit")
+        boolean isHit;
+    }
+
+    /**
+     * The event of a used elevation probe.
+     */
+    @Name("xyz.ronella.command.arrays.ElevationCheck")
+    @Label("Elevation Check")
+    @Category(CATEGORY)
+    @Description("The elevation probe of RunAsChecker was used.")
+    static final class ElevationCheckEvent extends Event {
+        @Label("Elevated")
+        boolean isElevated;
+
+        @Label("Check Duration")
+        @Timespan
+        long checkDuration;
+    }
+
+    @Override
+    public void built(final BuildPath path, final long durationNanos, final int argCount, final int payloadSize) {
+        final var event = new BuildEvent();
+        if (event.shouldCommit()) {
+            event.path = path.name();
+            event.buildDuration = durationNanos;
+            event.argCount = argCount;
+            event.payloadSize = payloadSize;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void cacheAccessed(final String cacheName, final boolean isHit) {
+        final var event = new CacheAccessEvent();
+        if (event.shouldCommit()) {
+            event.cacheName = cacheName;
+            event.isHit = isHit;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void elevationChecked(final boolean isElevated, final long durationNanos) {
+        final var event = new ElevationCheckEvent();
+        if (event.shouldCommit()) {
+            event.isElevated = isElevated;
+            event.checkDuration = durationNanos;
+            event.commit();
+        }
+    }
+}
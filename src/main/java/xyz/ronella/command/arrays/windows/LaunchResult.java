@@ -0,0 +1,50 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * The outcome of a launched command array.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class LaunchResult {
+
+    private final int exitCode;
+    private final String output;
+    private final String error;
+
+    /**
+     * Creates the outcome of a launched command array.
+     * @param exitCode The exit code of the process.
+     * @param output The standard output of the process.
+     * @param error The standard error of the process.
+     */
+    LaunchResult(final int exitCode, final String output, final String error) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.error = error;
+    }
+
+    /**
+     * The exit code of the process.
+     * @return The exit code.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * The standard output of the process.
+     * @return The standard output.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * The standard error of the process.
+     * @return The standard error.
+     */
+    public String getError() {
+        return error;
+    }
+}
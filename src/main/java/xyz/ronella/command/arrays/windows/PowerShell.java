@@ -3,12 +3,17 @@ package xyz.ronella.command.arrays.windows;
 import xyz.ronella.trivial.decorator.ListAdder;
 import xyz.ronella.trivial.decorator.StringBuilderAppender;
 import xyz.ronella.trivial.handy.ICommandArray;
-import xyz.ronella.trivial.handy.impl.CommandArray;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * PowerShell implementation of ICommandArray.
@@ -22,9 +27,23 @@ public final class PowerShell implements ICommandArray {
      * The program to use for this implementation.
      */
     public static final String PROGRAM = "powershell.exe";
-    private static final String REGEX_LITERAL = "^[Ll][Ii][Tt][Ee][Rr][Aa][Ll]:";
-    private static final String LITERAL_MATCHER = String.format("%s(.*)", REGEX_LITERAL);
-    private final ICommandArray array;
+
+    /**
+     * The maximum length of the command line of CreateProcess.
+     *
+     * @since 1.1.0
+     */
+    public static final int MAX_COMMAND_LINE_LENGTH = 32_767;
+
+    /**
+     * The overhead of each argument when computing the length of the command line
+     * (i.e. the separator and the quotes of an argument with spaces).
+     */
+    private static final int ARG_OVERHEAD = 3;
+    private static final char ARG_SEPARATOR = ' ';
+    private final String[] command;
+    private final List<String> commandView;
+    private final Supplier<PowerShellBuilder> origin;
 
     /**
      * Get the value of the text without any prefix.
@@ -32,7 +51,7 @@ public final class PowerShell implements ICommandArray {
      * @return A clean text.
      */
     public static String getValue(final String text) {
-        return text.matches(LITERAL_MATCHER) ? text.replaceFirst(REGEX_LITERAL, "") : text;
+        return ArgClassifier.stripLiteral(text);
     }
 
     /**
@@ -41,18 +60,46 @@ public final class PowerShell implements ICommandArray {
      * @return A base64 text.
      */
     public static String encodeText(final String text) {
-        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_16LE));
+        return Utf16LeBase64Encoder.encode(text);
     }
 
-    private PowerShell(final PowerShellBuilder builder) {
-        final var arrayBuilder = CommandArray.getBuilder()
-                .addArgs(builder.args);
+    /**
+     * The number of characters from which encodeText splits the work in chunks that are encoded in parallel.
+     * @return The parallel encoding threshold.
+     *
+     * @since 1.1.0
+     */
+    public static int getParallelEncodingThreshold() {
+        return Utf16LeBase64Encoder.getParallelThreshold();
+    }
 
-        if (!builder.stopProgramName) {
-            arrayBuilder.setProgram(PROGRAM);
-        }
+    /**
+     * Sets the number of characters from which encodeText splits the work in chunks that are encoded in parallel
+     * on the common ForkJoinPool. The default is 1048576.
+     * @param threshold A positive number of characters. Use Integer.MAX_VALUE to always encode sequentially.
+     *
+     * @since 1.1.0
+     */
+    public static void setParallelEncodingThreshold(final int threshold) {
+        Utf16LeBase64Encoder.setParallelThreshold(threshold);
+    }
 
-        this.array = arrayBuilder.build();
+    private PowerShell(final String[] command, final Supplier<PowerShellBuilder> origin) {
+        this.command = command;
+        this.commandView = Collections.unmodifiableList(Arrays.asList(command));
+        this.origin = origin;
+    }
+
+    private static String[] toCommand(final List<String> args, final boolean stopProgramName) {
+        final var output = new String[args.size() + (stopProgramName ? 0 : 1)];
+        int pos = 0;
+        if (!stopProgramName) {
+            output[pos++] = PROGRAM;
+        }
+        for (final var arg : args) {
+            output[pos++] = arg;
+        }
+        return output;
     }
 
     /**
@@ -61,7 +108,57 @@ public final class PowerShell implements ICommandArray {
      */
     @Override
     public String[] getCommand() {
-        return array.getCommand();
+        return command.clone();
+    }
+
+    /**
+     * An unmodifiable view of the powershell command. Use this when the command is only read
+     * since this doesn't copy the command like the getCommand method.
+     * @return The command in an unmodifiable list.
+     *
+     * @since 1.1.0
+     */
+    public List<String> asList() {
+        return commandView;
+    }
+
+    /**
+     * Passes each argument of the powershell command to the consumer in order.
+     * @param consumer The receiver of each argument.
+     *
+     * @since 1.1.0
+     */
+    public void forEachArg(final Consumer<String> consumer) {
+        for (final var arg : command) {
+            consumer.accept(arg);
+        }
+    }
+
+    /**
+     * Writes the arguments of the powershell command to the appendable separated by a space.
+     * @param appendable The receiver of the command.
+     * @throws IOException When the appendable cannot be written.
+     *
+     * @since 1.1.0
+     */
+    public void writeTo(final Appendable appendable) throws IOException {
+        for (int idx = 0; idx < command.length; idx++) {
+            if (idx > 0) {
+                appendable.append(ARG_SEPARATOR);
+            }
+            appendable.append(command[idx]);
+        }
+    }
+
+    /**
+     * Create a new builder with the same state as the builder that created this PowerShell.
+     * Use this to create a variant of this command without repeating all the add methods.
+     * @return An instance of PowerShellBuilder.
+     *
+     * @since 1.1.0
+     */
+    public PowerShellBuilder toBuilder() {
+        return origin.get();
     }
 
     /**
@@ -72,6 +169,45 @@ public final class PowerShell implements ICommandArray {
         return new PowerShellBuilder();
     }
 
+    /**
+     * Generates the powershell commands in arrays of many argument sets sharing the same base configuration.
+     * The base configuration is processed once for the whole batch.
+     * @param base The builder that holds the base configuration.
+     * @param argSets The arguments added after the normal arguments of the base for each command.
+     * @return The commands in array in the same order as the argSets.
+     *
+     * @since 1.1.0
+     */
+    public static List<String[]> buildAll(final PowerShellBuilder base, final Collection<? extends Collection<String>> argSets) {
+        return base.toFactory().getCommands(argSets);
+    }
+
+    /**
+     * Generates the powershell commands in arrays of many argument sets sharing the same base configuration
+     * using the threads of the pool.
+     * @param base The builder that holds the base configuration.
+     * @param argSets The arguments added after the normal arguments of the base for each command.
+     * @param pool The pool that will generate the commands.
+     * @return The commands in array in the same order as the argSets.
+     *
+     * @since 1.1.0
+     */
+    public static List<String[]> buildAll(final PowerShellBuilder base, final Collection<? extends Collection<String>> argSets,
+                                          final ForkJoinPool pool) {
+        return base.toFactory().getCommands(argSets, pool);
+    }
+
+    /**
+     * Access the builder of the PowerShell command template.
+     * Use the addArgSlot/addZArgSlot methods to define the slots and the compile method to create the template.
+     * @return An instance of PowerShellBuilder.
+     *
+     * @since 1.1.0
+     */
+    public static PowerShellBuilder template() {
+        return new PowerShellBuilder();
+    }
+
     /**
      * The only class the can create an intance of PowerShell command array.
      */
@@ -81,38 +217,98 @@ public final class PowerShell implements ICommandArray {
          * The default arguments to be added to the powershell command when it is enabled.
          */
         private static final List<String> DEFAULT_ARGS = List.of("-NoProfile", "-InputFormat", "None", "-ExecutionPolicy", "Bypass");
-        private static final String REGEX_RAW_PREFIX = "^[\"'&{].*";
+        private static final String START_PROCESS = "Exit (Start-Process ";
+        private static final String WAIT_PASS_THRU = " -Wait -PassThru";
+        private static final String EXIT_CODE = ").ExitCode";
+        private static final String ARGUMENT_LIST = " -argumentlist ";
+        private static final String CALL = "& ";
+        private static final List<String> HIDDEN_ARGS = List.of("-WindowStyle", "Hidden");
+        private static final String ENCODED_COMMAND = "-EncodedCommand";
+        private static final String FILE = "-File";
+        private static final String EXECUTION_POLICY = "-ExecutionPolicy";
+        private static final String BYPASS = "Bypass";
+        private static final char ARGS_DELIMITER = ',';
         private String command;
         private final List<String> progArgs;
-        private final List<String> args;
-        private final List<String> inputArgs;
-        private final List<String> inputZArgs;
-        private final List<String> adminModeHeader;
-        private final List<String> encodedArgs;
+        private final List<InputArg> inputArgs;
+        private final List<InputArg> inputZArgs;
+        private final List<InputArg> adminModeHeader;
         private boolean hasDefaultArgs;
         private Boolean isAdminMode;
         private boolean prefNonAdminMode;
         private boolean stopProgramName;
         private boolean isRawArgs;
         private IPSAdminModeLogic adminLogic;
+        private Path scriptDirectory;
+        private PowerShellPayloadCache payloadCache;
+        private int maxCommandLineLength = MAX_COMMAND_LINE_LENGTH;
+        private int compressionThreshold;
+        private IPSScriptTransformer scriptTransformer;
 
         private PowerShellBuilder() {
-            progArgs = new ArrayList<>();
-            args = new ArrayList<>();
-            inputArgs = new ArrayList<>();
-            inputZArgs = new ArrayList<>();
-            adminModeHeader = new ArrayList<>();
-            encodedArgs = new ArrayList<>();
+            this(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        private PowerShellBuilder(final List<String> progArgs, final List<InputArg> inputArgs,
+                                  final List<InputArg> inputZArgs, final List<InputArg> adminModeHeader) {
+            this.progArgs = progArgs;
+            this.inputArgs = inputArgs;
+            this.inputZArgs = inputZArgs;
+            this.adminModeHeader = adminModeHeader;
+        }
+
+        private PowerShellBuilder(final PowerShellBuilder source) {
+            this();
+            progArgs.addAll(source.progArgs);
+            inputArgs.addAll(source.inputArgs);
+            inputZArgs.addAll(source.inputZArgs);
+            adminModeHeader.addAll(source.adminModeHeader);
+            copySettings(source);
+        }
+
+        /**
+         * Creates a read only copy of the source that is only used to create new builders (i.e. toBuilder).
+         * The empty lists are shared, hence it is cheaper than copy.
+         */
+        private static PowerShellBuilder snapshot(final PowerShellBuilder source) {
+            final var output = new PowerShellBuilder(List.copyOf(source.progArgs), List.copyOf(source.inputArgs),
+                    List.copyOf(source.inputZArgs), List.copyOf(source.adminModeHeader));
+            output.copySettings(source);
+            return output;
         }
 
-        private String condQuote(final String text) {
+        private void copySettings(final PowerShellBuilder source) {
+            command = source.command;
+            hasDefaultArgs = source.hasDefaultArgs;
+            isAdminMode = source.isAdminMode;
+            prefNonAdminMode = source.prefNonAdminMode;
+            stopProgramName = source.stopProgramName;
+            isRawArgs = source.isRawArgs;
+            adminLogic = source.adminLogic;
+            scriptDirectory = source.scriptDirectory;
+            payloadCache = source.payloadCache;
+            maxCommandLineLength = source.maxCommandLineLength;
+            compressionThreshold = source.compressionThreshold;
+            scriptTransformer = source.scriptTransformer;
+        }
+
+        private PowerShellBuilder withInputs(final List<InputArg> inputs, final int zArgsIndex) {
+            final var output = new PowerShellBuilder(this);
+            output.inputArgs.clear();
+            output.inputArgs.addAll(inputs.subList(0, zArgsIndex));
+            output.inputZArgs.clear();
+            output.inputZArgs.addAll(inputs.subList(zArgsIndex, inputs.size()));
+            return output;
+        }
+
+        private static String condQuote(final String text) {
             return condQuote(text, false);
         }
 
-        private String condQuote(final String text, final boolean forceQuote) {
+        private static String condQuote(final String text, final boolean forceQuote) {
             var output = quote(text);
 
-            if (text.matches(LITERAL_MATCHER)) {
+            if (ArgClassifier.isLiteral(text)) {
                 final var cleanedText = PowerShell.getValue(text);
                 output = forceQuote ? quote(cleanedText) : cleanedText;
             }
@@ -120,18 +316,28 @@ public final class PowerShell implements ICommandArray {
             return output;
         }
 
-        private String quote(final String text) {
-            return String.format("\"%s\"", text);
+        private static String quote(final String text) {
+            return "\"" + text + "\"";
         }
 
-        private String condTripleQuote(final String text) {
-            return argToSingleLine(text).matches(LITERAL_MATCHER)
-                    ? PowerShell.getValue(text)
-                    : tripleQuote(text);
+        private static String condTripleQuote(final String text) {
+            final String output;
+            switch (ArgClassifier.classify(text)) {
+                case RAW:
+                    output = text;
+                    break;
+                case LITERAL:
+                    output = PowerShell.getValue(text);
+                    break;
+                default:
+                    output = tripleQuote(text);
+                    break;
+            }
+            return output;
         }
 
-        private String tripleQuote(final String text) {
-            return String.format("\"\"\"%s\"\"\"", text);
+        private static String tripleQuote(final String text) {
+            return "\"\"\"" + text + "\"\"\"";
         }
 
         private boolean determineAdminMode() {
@@ -142,41 +348,313 @@ public final class PowerShell implements ICommandArray {
             return output;
         }
 
-        private StringBuilder inputArgsToStringBuilder(final List<String> args, final String delimiter) {
+        private static String processCommand(final String command) {
+            return ArgClassifier.isRaw(command) ? command : condQuote(command);
+        }
+
+        private static StringBuilder joinArgs(final List<String> processedArgs, final String delimiter) {
             final var sbArgs = new StringBuilder();
             final var appenderArgs = new StringBuilderAppender(sbArgs);
-            args.forEach(___arg -> {
+            processedArgs.forEach(___arg -> {
                 appenderArgs.append(() -> sbArgs.length() > 0, delimiter);
-                if (rawArgQualifier(___arg)) {
-                    appenderArgs.append(___arg);
-                } else {
-                    appenderArgs.append(condTripleQuote(___arg));
-                }
+                appenderArgs.append(___arg);
             });
             return sbArgs;
         }
 
-        private void adminModeLogic(final ListAdder<String> addrArgs, final boolean isAdmin) {
-            addrArgs.add(() -> {
-                final var logic = Optional.ofNullable(this.adminLogic);
-                final var internalCommand =  Optional.ofNullable(command).orElse(PROGRAM);
-                return logic.orElseGet(()-> (___isAdminMode, ___adminHeaders, ___progArgs, ___command, ___commandArgs)-> {
-                    final var sbArgs = inputArgsToStringBuilder(___commandArgs, ",");
-                    final var adminCommand = String.format("Exit (Start-Process %s -Wait -PassThru%s%s%s).ExitCode",
-                            condQuote(___command, true), ___isAdminMode ? " -Verb RunAs": "", sbArgs.length() == 0 ? "" : " -argumentlist ", sbArgs);
-                    final var argsAdder = new ListAdder<>(___progArgs);
-                    argsAdder.addAll(()-> PROGRAM.equals(___command.toLowerCase(Locale.ROOT)), List.of("-WindowStyle","Hidden"));
-                    argsAdder.add("-EncodedCommand");
-                    final var sbAdminCommand = new StringBuilder();
-                    ___adminHeaders.stream().map(___header -> ___header + "\n").forEach(sbAdminCommand::append);
-                    sbAdminCommand.append(adminCommand);
-                    return PowerShell.encodeText(sbAdminCommand.toString());
-                }).generate(isAdmin, adminModeHeader, args, internalCommand, getAllInputArgs());
-            });
+        private void appendInputArgs(final StringBuilder sbArgs, final List<InputArg> args) {
+            for (final var arg : args) {
+                if (sbArgs.length() > 0) {
+                    sbArgs.append(ARGS_DELIMITER);
+                }
+                sbArgs.append(processInputArg(arg));
+            }
         }
 
-        private List<String> getAllInputArgs() {
-            final var allInputs = new ArrayList<String>();
+        private static boolean isHiddenWindow(final String command) {
+            return PROGRAM.equals(command.toLowerCase(Locale.ROOT));
+        }
+
+        private static void addAdminModePArgs(final List<String> psArgs, final String command) {
+            final var argsAdder = new ListAdder<>(psArgs);
+            argsAdder.addAll(()-> isHiddenWindow(command), HIDDEN_ARGS);
+            argsAdder.add(ENCODED_COMMAND);
+        }
+
+        /**
+         * The script of the admin mode command that can be encoded or written without an intermediate text.
+         */
+        private static final class AdminModeScript {
+            private final List<String> headers;
+            private final String quotedCommand;
+            private final String verb;
+            private final String argList;
+            private final CharSequence processedArgs;
+
+            private AdminModeScript(final boolean isAdminMode, final List<String> headers, final String command,
+                                    final CharSequence processedArgs) {
+                this.headers = headers;
+                this.quotedCommand = condQuote(command, true);
+                this.verb = isAdminMode ? " -Verb RunAs" : "";
+                this.argList = processedArgs.length() == 0 ? "" : ARGUMENT_LIST;
+                this.processedArgs = processedArgs;
+            }
+
+            private int length() {
+                return headers.stream().mapToInt(___header -> ___header.length() + 1).sum()
+                        + START_PROCESS.length() + quotedCommand.length() + WAIT_PASS_THRU.length() + verb.length()
+                        + argList.length() + processedArgs.length() + EXIT_CODE.length();
+            }
+
+            private String encode() {
+                final var output = new StringBuilder(Utf16LeBase64Encoder.encodedLength(length()));
+                final var encoder = headers.isEmpty() ? new Utf16LeBase64Encoder(output)
+                        : EncodedHeaderCache.getOrEncode(headers).resume(output);
+                return encoder.append(START_PROCESS).append(quotedCommand).append(WAIT_PASS_THRU).append(verb)
+                        .append(argList).append(processedArgs).append(EXIT_CODE)
+                        .finish()
+                        .toString();
+            }
+
+            private StringBuilder toText() {
+                final var text = new StringBuilder(length());
+                headers.forEach(___header -> text.append(___header).append('\n'));
+                return text.append(START_PROCESS).append(quotedCommand).append(WAIT_PASS_THRU).append(verb)
+                        .append(argList).append(processedArgs).append(EXIT_CODE);
+            }
+
+            private StringBuilder toCallText() {
+                final var text = new StringBuilder();
+                headers.forEach(___header -> text.append(___header).append('\n'));
+                text.append(CALL).append(quotedCommand);
+                if (processedArgs.length() > 0) {
+                    text.append(' ').append(processedArgs);
+                }
+                return text;
+            }
+        }
+
+        private static boolean isCompressed(final int compressionThreshold, final int length) {
+            return compressionThreshold > 0 && length >= compressionThreshold;
+        }
+
+        private static String encode(final CharSequence text, final PowerShellPayloadCache payloadCache) {
+            return null == payloadCache ? Utf16LeBase64Encoder.encode(text) : payloadCache.getOrEncode(text);
+        }
+
+        private static String encodeAdminModeScript(final boolean isAdminMode, final List<String> headers,
+                                                    final String command, final CharSequence processedArgs,
+                                                    final int compressionThreshold) {
+            final var script = new AdminModeScript(isAdminMode, headers, command, processedArgs);
+            return isCompressed(compressionThreshold, script.length())
+                    ? Utf16LeBase64Encoder.encode(CompressedScripts.compress(script.toText())) : script.encode();
+        }
+
+        private boolean isCompressed(final InputArg arg) {
+            return arg.isEncoded() && isCompressed(compressionThreshold, arg.getScript().length());
+        }
+
+        private String encodeArg(final InputArg arg) {
+            return isCompressed(arg) ? Utf16LeBase64Encoder.encode(CompressedScripts.compress(arg.getScript()))
+                    : arg.getValue();
+        }
+
+        private static int commandLineLength(final String[] args) {
+            int output = 0;
+            for (final var arg : args) {
+                output += null == arg ? 0 : arg.length() + ARG_OVERHEAD;
+            }
+            return output;
+        }
+
+        private boolean isOverflow(final int length) {
+            return null != scriptDirectory && length > maxCommandLineLength;
+        }
+
+        private int prefixCount() {
+            return (stopProgramName ? 0 : 1) + (hasDefaultArgs ? DEFAULT_ARGS.size() : 0) + progArgs.size();
+        }
+
+        private int writePrefix(final String[] output) {
+            int pos = 0;
+            if (!stopProgramName) {
+                output[pos++] = PROGRAM;
+            }
+            if (hasDefaultArgs) {
+                for (final var arg : DEFAULT_ARGS) {
+                    output[pos++] = arg;
+                }
+            }
+            for (final var arg : progArgs) {
+                output[pos++] = arg;
+            }
+            return pos;
+        }
+
+        private int writeInputArgs(final String[] output, final int start, final List<InputArg> args) {
+            int pos = start;
+            for (final var arg : args) {
+                output[pos++] = null != scriptDirectory && arg.isEncoded() && !isCompressed(arg) ? null
+                        : processInputArg(arg);
+            }
+            return pos;
+        }
+
+        private int encodedLength(final List<InputArg> args) {
+            int output = 0;
+            for (final var arg : args) {
+                if (arg.isEncoded() && !isCompressed(arg)) {
+                    output += Utf16LeBase64Encoder.encodedLength(arg.getScript().length()) + ARG_OVERHEAD;
+                }
+            }
+            return output;
+        }
+
+        private int writeEncodedArgs(final String[] output, final int start, final List<InputArg> args,
+                                     final boolean isOverflow) {
+            int pos = start;
+            for (final var arg : args) {
+                if (arg.isEncoded() && !isCompressed(arg)) {
+                    if (isOverflow && pos > 0 && ArgClassifier.isFlag(output[pos - 1], ENCODED_COMMAND)) {
+                        if (pos != output.length - 1) {
+                            throw new IllegalStateException("The encoded argument must be the last argument to be "
+                                    + "written to a script file.");
+                        }
+                        output[pos - 1] = FILE;
+                        output[pos] = ScriptFiles.write(scriptDirectory, arg.getScript()).toString();
+                    }
+                    else {
+                        output[pos] = arg.getValue();
+                    }
+                }
+                pos++;
+            }
+            return pos;
+        }
+
+        private String[] prepareCommand() {
+            final boolean hasCommand = null != command;
+            var output = new String[prefixCount() + (hasCommand ? 1 : 0) + inputArgs.size() + inputZArgs.size()];
+            int pos = writePrefix(output);
+            if (hasCommand) {
+                output[pos++] = processCommand(command);
+            }
+            final int inputStart = pos;
+            pos = writeInputArgs(output, pos, inputArgs);
+            writeInputArgs(output, pos, inputZArgs);
+            if (null != scriptDirectory) {
+                final boolean isOverflow = isOverflow(commandLineLength(output) + encodedLength(inputArgs)
+                        + encodedLength(inputZArgs));
+                pos = writeEncodedArgs(output, inputStart, inputArgs, isOverflow);
+                writeEncodedArgs(output, pos, inputZArgs, isOverflow);
+                if (isOverflow && output.length > 1 && FILE.equals(output[output.length - 2])) {
+                    output = withExecutionPolicy(output, output.length - 2);
+                }
+            }
+            return output;
+        }
+
+        /**
+         * Adds -ExecutionPolicy Bypass before the -File argument when the command doesn't have an execution policy.
+         */
+        private static String[] withExecutionPolicy(final String[] command, final int filePos) {
+            boolean hasPolicy = false;
+            for (int idx = 0; idx < filePos && !hasPolicy; idx++) {
+                hasPolicy = ArgClassifier.isFlag(command[idx], EXECUTION_POLICY);
+            }
+            String[] output = command;
+            if (!hasPolicy) {
+                output = new String[command.length + 2];
+                System.arraycopy(command, 0, output, 0, filePos);
+                output[filePos] = EXECUTION_POLICY;
+                output[filePos + 1] = BYPASS;
+                System.arraycopy(command, filePos, output, filePos + 2, command.length - filePos);
+            }
+            return output;
+        }
+
+        /**
+         * The length of the command line of prepareCommand with the -EncodedCommand form of the encoded arguments.
+         * This doesn't write the script files.
+         */
+        private int prepareCommandLength() {
+            final boolean hasCommand = null != command;
+            final var prefix = new String[prefixCount() + (hasCommand ? 1 : 0)];
+            final int pos = writePrefix(prefix);
+            if (hasCommand) {
+                prefix[pos] = processCommand(command);
+            }
+            return commandLineLength(prefix) + inputArgsLength(inputArgs) + inputArgsLength(inputZArgs);
+        }
+
+        private int inputArgsLength(final List<InputArg> args) {
+            int output = 0;
+            for (final var arg : args) {
+                output += (arg.isEncoded() && !isCompressed(arg)
+                        ? Utf16LeBase64Encoder.encodedLength(arg.getScript().length())
+                        : processInputArg(arg).length()) + ARG_OVERHEAD;
+            }
+            return output;
+        }
+
+        private String[] newAdminModeCommand(final String internalCommand) {
+            final boolean isHidden = isHiddenWindow(internalCommand);
+            final var output = new String[prefixCount() + (isHidden ? HIDDEN_ARGS.size() : 0) + 2];
+            int pos = writePrefix(output);
+            if (isHidden) {
+                for (final var arg : HIDDEN_ARGS) {
+                    output[pos++] = arg;
+                }
+            }
+            return output;
+        }
+
+        private StringBuilder processedInputArgs() {
+            final var output = new StringBuilder();
+            appendInputArgs(output, inputArgs);
+            appendInputArgs(output, inputZArgs);
+            return output;
+        }
+
+        private String[] prepareAdminModeCommand(final boolean isAdmin) {
+            final var internalCommand = null == command ? PROGRAM : command;
+            var output = newAdminModeCommand(internalCommand);
+            int pos = output.length - 2;
+            final var sbArgs = processedInputArgs();
+            final var script = new AdminModeScript(isAdmin, getHeaders(), internalCommand, sbArgs);
+            final var compressed = isCompressed(compressionThreshold, script.length())
+                    ? CompressedScripts.compress(script.toText()) : null;
+            final int scriptLength = null == compressed ? script.length() : compressed.length();
+            if (isOverflow(commandLineLength(output) + ENCODED_COMMAND.length()
+                    + Utf16LeBase64Encoder.encodedLength(scriptLength) + 2 * ARG_OVERHEAD)) {
+                output[pos] = FILE;
+                output[pos + 1] = ScriptFiles.write(scriptDirectory, script.toText()).toString();
+                output = withExecutionPolicy(output, pos);
+            }
+            else if (null == compressed) {
+                output[pos++] = ENCODED_COMMAND;
+                output[pos] = null == payloadCache ? script.encode() : payloadCache.getOrEncode(script.toText());
+            }
+            else {
+                output[pos++] = ENCODED_COMMAND;
+                output[pos] = encode(compressed, payloadCache);
+            }
+            return output;
+        }
+
+        private String[] prepareAdminModeLogicCommand(final boolean isAdmin) {
+            final var args = new ArrayList<String>();
+            final var addrArgs = new ListAdder<>(args);
+            addrArgs.addAll(()-> hasDefaultArgs, DEFAULT_ARGS);
+            addrArgs.addAll(()-> !progArgs.isEmpty(), progArgs);
+            final var internalCommand =  Optional.ofNullable(command).orElse(PROGRAM);
+            args.add(adminLogic.generate(isAdmin, getHeaders(), args, internalCommand,
+                    getAllInputArgs()));
+            return toCommand(args, stopProgramName);
+        }
+
+        private List<InputArg> getAllInputs() {
+            final var allInputs = new ArrayList<InputArg>();
             final var adder = new ListAdder<>(allInputs);
             adder.addAll(()-> !inputArgs.isEmpty(), inputArgs);
             adder.addAll(()-> !inputZArgs.isEmpty(), inputZArgs);
@@ -184,43 +662,392 @@ public final class PowerShell implements ICommandArray {
             return allInputs;
         }
 
-        private String argToSingleLine(final String arg) {
-            return arg.replaceAll("[\n\r]", " ");
+        private List<String> getHeaders() {
+            final var output = new ArrayList<String>(adminModeHeader.size());
+            for (final var header : adminModeHeader) {
+                output.add(header.getValue());
+            }
+            return output;
         }
 
-        private boolean rawRegexQualifier(final String arg) {
-            final var singeLineArg = argToSingleLine(arg);
-            return singeLineArg.matches(REGEX_RAW_PREFIX);
+        private static boolean hasDeferred(final List<InputArg> args) {
+            boolean output = false;
+            for (int idx = 0; idx < args.size() && !output; idx++) {
+                output = args.get(idx).isDeferred();
+            }
+            return output;
         }
 
-        private boolean rawArgQualifier(final String arg) {
-            return isRawArgs || encodedArgs.contains(arg) || rawRegexQualifier(arg);
+        private static void resolve(final List<InputArg> args) {
+            if (hasDeferred(args)) {
+                final var resolved = new ArrayList<InputArg>(args.size());
+                for (final var arg : args) {
+                    arg.resolveTo(resolved);
+                }
+                args.clear();
+                args.addAll(resolved);
+            }
         }
 
-        private void prepareArgs() {
-            final var addrArgs = new ListAdder<>(args);
-            addrArgs.addAll(()-> hasDefaultArgs, DEFAULT_ARGS);
-            addrArgs.addAll(()-> !progArgs.isEmpty(), progArgs);
+        /**
+         * Replaces the encoded arguments with their transformed scripts.
+         */
+        private void transformScripts(final List<InputArg> args) {
+            final var transformed = new ArrayList<InputArg>(args.size());
+            for (final var arg : args) {
+                transformed.add(arg.isEncoded() ? InputArg.encoded(scriptTransformer.transform(arg.getScript())) : arg);
+            }
+            args.clear();
+            args.addAll(transformed);
+        }
+
+        /**
+         * Replaces the headers with their transformed scripts and drops the ones that became empty.
+         */
+        private void transformHeaders() {
+            final var transformed = new ArrayList<InputArg>(adminModeHeader.size());
+            for (final var header : adminModeHeader) {
+                final var value = scriptTransformer.transform(header.getValue());
+                if (!value.isEmpty()) {
+                    transformed.add(InputArg.normal(value));
+                }
+            }
+            adminModeHeader.clear();
+            adminModeHeader.addAll(transformed);
+        }
+
+        /**
+         * Evaluates the suppliers of the deferred arguments and applies the script transformer.
+         * The headers are only evaluated and transformed in admin mode.
+         * @return This builder when nothing is deferred or transformed. Otherwise, a copy with the resolved arguments.
+         */
+        private PowerShellBuilder resolve() {
+            final boolean isAdminModeSet = null != isAdminMode;
+            final boolean hasDeferredHeaders = isAdminModeSet && hasDeferred(adminModeHeader);
+            PowerShellBuilder output = this;
+            if (hasDeferred(inputArgs) || hasDeferred(inputZArgs) || hasDeferredHeaders || null != scriptTransformer) {
+                output = copy();
+                resolve(output.inputArgs);
+                resolve(output.inputZArgs);
+                if (hasDeferredHeaders) {
+                    resolve(output.adminModeHeader);
+                }
+                if (null != scriptTransformer) {
+                    output.transformScripts(output.inputArgs);
+                    output.transformScripts(output.inputZArgs);
+                    if (isAdminModeSet) {
+                        output.transformHeaders();
+                    }
+                }
+            }
+            return output;
+        }
+
+        private List<String> getAllInputArgs() {
+            return getAllInputs().stream().map(InputArg::getValue).collect(Collectors.toList());
+        }
+
+        /**
+         * Checks if the builder will generate the runAs command array.
+         * This is used to route the command to the elevated sessions of the PowerShellSessionPool.
+         */
+        boolean isRunAs() {
+            return determineAdminMode();
+        }
+
+        /**
+         * The admin mode script that calls the command directly instead of through Start-Process and Exit.
+         * This is the script that the elevated sessions of the PowerShellSessionPool execute for the runAs command.
+         */
+        String toRunAsScript() {
+            final var resolved = resolve();
+            final var internalCommand = null == resolved.command ? PROGRAM : resolved.command;
+            return new AdminModeScript(false, resolved.getHeaders(), internalCommand, resolved.processedInputArgs())
+                    .toCallText()
+                    .toString();
+        }
+
+        /**
+         * Checks if the builder has the deferred arguments or headers that are evaluated on every build.
+         * This is used to bypass the PowerShellCache.
+         */
+        boolean hasDeferred() {
+            return hasDeferred(inputArgs) || hasDeferred(inputZArgs)
+                    || null != isAdminMode && hasDeferred(adminModeHeader);
+        }
+
+        /**
+         * The state of the builder that affects the generated command.
+         * This is used as the key of the PowerShellCache.
+         */
+        List<Object> getStateKey() {
+            return Arrays.asList(command, List.copyOf(progArgs), List.copyOf(getAllInputs()),
+                    List.copyOf(adminModeHeader), hasDefaultArgs, null == isAdminMode ? null : determineAdminMode(),
+                    stopProgramName, isRawArgs, adminLogic, scriptDirectory, maxCommandLineLength,
+                    compressionThreshold, scriptTransformer);
+        }
+
+        private static boolean hasSlot(final List<InputArg> args) {
+            boolean output = false;
+            for (int idx = 0; idx < args.size() && !output; idx++) {
+                output = args.get(idx).isSlot();
+            }
+            return output;
+        }
+
+        private boolean hasSlots() {
+            return hasSlot(inputArgs) || hasSlot(inputZArgs);
+        }
+
+        private static void addNormalArgs(final List<InputArg> target, final Collection<String> args) {
+            args.forEach(___arg -> target.add(InputArg.normal(___arg)));
+        }
+
+        private String processInputArg(final InputArg arg) {
+            return processInputArg(arg.isEncoded() ? encodeArg(arg) : arg.getValue(), arg.isRaw(isRawArgs));
+        }
+
+        private static String processInputArg(final String arg, final boolean isRaw) {
+            return isRaw ? arg : condTripleQuote(arg);
+        }
 
-            if (null != isAdminMode) {
-                adminModeLogic(addrArgs, determineAdminMode());
+        private IPSInstrumentation.BuildPath getBuildPath(final boolean isAdmin) {
+            final IPSInstrumentation.BuildPath output;
+            if (null == isAdminMode) {
+                output = IPSInstrumentation.BuildPath.NON_ADMIN;
+            }
+            else if (null != adminLogic) {
+                output = IPSInstrumentation.BuildPath.ADMIN_MODE_LOGIC;
             }
             else {
-                final var allInputs = getAllInputArgs();
-                addrArgs.add(()-> command!=null, ()-> command.matches(REGEX_RAW_PREFIX) ? command : condQuote(command));
-                addrArgs.addAll(()-> !allInputs.isEmpty(), allInputs.stream()
-                        .map(___arg -> rawArgQualifier(___arg) ? ___arg : condTripleQuote(___arg))
-                        .collect(Collectors.toList()));
+                output = isAdmin ? IPSInstrumentation.BuildPath.ADMIN_MODE_RUNAS
+                        : IPSInstrumentation.BuildPath.ADMIN_MODE_NO_RUNAS;
             }
+            return output;
+        }
+
+        private static int payloadSize(final String[] args) {
+            int output = 0;
+            for (int idx = 0; idx < args.length - 1; idx++) {
+                if (ArgClassifier.isFlag(args[idx], ENCODED_COMMAND) || ArgClassifier.isFlag(args[idx], FILE)) {
+                    output += args[idx + 1].length();
+                }
+            }
+            return output;
+        }
+
+        private String[] prepareArgs() {
+            final boolean isAdmin = null != isAdminMode && determineAdminMode();
+            final String[] output;
+            if (null == isAdminMode) {
+                output = prepareCommand();
+            }
+            else if (null == adminLogic) {
+                output = prepareAdminModeCommand(isAdmin);
+            }
+            else {
+                output = prepareAdminModeLogicCommand(isAdmin);
+            }
+            return output;
         }
 
         /**
          * Create an instance of PowerShell command array.
+         * This doesn't change the state of the builder, hence it can be called many times.
          * @return An instance of PowerShell command array.
          */
         public PowerShell build() {
-            prepareArgs();
-            return new PowerShell(this);
+            if (hasSlots()) {
+                throw new IllegalStateException("A builder with slots can only be compiled to a PowerShellTemplate.");
+            }
+            final boolean isInstrumented = PowerShellInstrumentation.isEnabled();
+            final long start = isInstrumented ? System.nanoTime() : 0L;
+            final var snapshot = snapshot(this);
+            final var resolved = resolve();
+            final var output = resolved.prepareArgs();
+            if (isInstrumented) {
+                PowerShellInstrumentation.getInstrumentation().built(resolved.getBuildPath(determineAdminMode()),
+                        System.nanoTime() - start, output.length, payloadSize(output));
+            }
+            return new PowerShell(output, snapshot::copy);
+        }
+
+        /**
+         * Create a new builder with the same state as this builder.
+         * Use this to fork a base configuration into many variants.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder copy() {
+            return new PowerShellBuilder(this);
+        }
+
+        /**
+         * Generates the command arrays of the extra arguments that stay within the maxCommandLineLength.
+         * The length of the admin mode command is computed from its uncompressed -EncodedCommand.
+         */
+        private static final class SplitIterator implements Iterator<PowerShell> {
+            private final PowerShellBuilder base;
+            private final Iterator<String> args;
+            private final boolean isAdminModeScript;
+            private final int fixedLength;
+            private final int scriptLength;
+            private final boolean hasArgs;
+            private String nextArg;
+
+            private SplitIterator(final PowerShellBuilder base, final Iterator<String> args) {
+                this.base = base;
+                this.args = args;
+                this.isAdminModeScript = null != base.isAdminMode;
+                if (isAdminModeScript) {
+                    final var internalCommand = null == base.command ? PROGRAM : base.command;
+                    final var processedArgs = base.processedInputArgs();
+                    this.fixedLength = commandLineLength(base.newAdminModeCommand(internalCommand))
+                            + ENCODED_COMMAND.length() + 2 * ARG_OVERHEAD;
+                    this.scriptLength = new AdminModeScript(base.determineAdminMode(), base.getHeaders(),
+                            internalCommand, processedArgs).length();
+                    this.hasArgs = processedArgs.length() > 0;
+                }
+                else {
+                    this.fixedLength = base.prepareCommandLength();
+                    this.scriptLength = 0;
+                    this.hasArgs = true;
+                }
+            }
+
+            private int commandLength(final int count, final int argsLength) {
+                final int output;
+                if (isAdminModeScript) {
+                    final int delta = argsLength + count + (hasArgs ? 0 : ARGUMENT_LIST.length() - 1);
+                    output = fixedLength + Utf16LeBase64Encoder.encodedLength(scriptLength + delta);
+                }
+                else {
+                    output = fixedLength + argsLength + count * ARG_OVERHEAD;
+                }
+                return output;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return null != nextArg || args.hasNext();
+            }
+
+            @Override
+            public PowerShell next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final var chunk = new ArrayList<String>();
+                int argsLength = 0;
+                boolean isFull = false;
+                while (!isFull && hasNext()) {
+                    final var arg = null == nextArg ? args.next() : nextArg;
+                    nextArg = null;
+                    final int length = argsLength + base.processInputArg(InputArg.normal(arg)).length();
+                    if (commandLength(chunk.size() + 1, length) <= base.maxCommandLineLength) {
+                        chunk.add(arg);
+                        argsLength = length;
+                    }
+                    else if (chunk.isEmpty()) {
+                        throw new IllegalArgumentException("An argument doesn't fit the maxCommandLineLength.");
+                    }
+                    else {
+                        nextArg = arg;
+                        isFull = true;
+                    }
+                }
+                return base.copy().addArgs(chunk).build();
+            }
+        }
+
+        /**
+         * Lazily create as many instances of PowerShell command array as needed for the arguments.
+         * Each command has the arguments of this builder and as many of the given arguments as fit the
+         * maxCommandLineLength appended to them (i.e. like addArgs). The length is computed from the processed
+         * arguments and the -EncodedCommand form of the encoded arguments, hence the commands never need a script
+         * file. This doesn't change the state of the builder.
+         *
+         * @param args The arguments to split between the commands. It is iterated once.
+         * @return A sequential stream of PowerShell command arrays.
+         *
+         * @since 1.1.0
+         */
+        public Stream<PowerShell> buildSplit(final Iterable<String> args) {
+            if (hasSlots()) {
+                throw new IllegalStateException("A builder with slots can only be compiled to a PowerShellTemplate.");
+            }
+            if (null != isAdminMode && null != adminLogic) {
+                throw new IllegalStateException("A builder with a custom admin mode logic cannot be split.");
+            }
+            final var resolved = resolve();
+            final var base = resolved == this ? copy() : resolved;
+            base.scriptTransformer = null;
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new SplitIterator(base, args.iterator()),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /**
+         * Lazily create as many instances of PowerShell command array as needed for the arguments.
+         * Closing the returned stream closes the stream of the arguments.
+         *
+         * @param args The arguments to split between the commands.
+         * @return A sequential stream of PowerShell command arrays.
+         *
+         * @since 1.1.0
+         */
+        public Stream<PowerShell> buildSplit(final Stream<String> args) {
+            return buildSplit((Iterable<String>) args::iterator).onClose(args::close);
+        }
+
+        /**
+         * Create an instance of PowerShellTemplate.
+         * All the arguments except the slots are processed once by this method.
+         * @return An instance of PowerShellTemplate.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellTemplate compile() {
+            return new PowerShellTemplate(resolve());
+        }
+
+        /**
+         * Create an instance of PowerShellCommandFactory using the current state of the builder as the base.
+         * @return An instance of PowerShellCommandFactory.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellCommandFactory toFactory() {
+            if (hasSlots()) {
+                throw new IllegalStateException("A builder with slots can only be compiled to a PowerShellTemplate.");
+            }
+            return new PowerShellCommandFactory(compile());
+        }
+
+        /**
+         * Use this to add a named placeholder of a normal argument.
+         * The value of the slot is provided when the PowerShellTemplate is bound.
+         * @param name The name of the slot.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addArgSlot(final String name) {
+            this.inputArgs.add(InputArg.slot(name));
+            return this;
+        }
+
+        /**
+         * Use this to add a named placeholder of an argument after the normal arguments.
+         * The value of the slot is provided when the PowerShellTemplate is bound.
+         * @param name The name of the slot.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addZArgSlot(final String name) {
+            this.inputZArgs.add(InputArg.slot(name));
+            return this;
         }
 
         /**
@@ -264,7 +1091,20 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addArgs(final Collection<String> args) {
-            this.inputArgs.addAll(args);
+            addNormalArgs(this.inputArgs, args);
+            return this;
+        }
+
+        /**
+         * Use this to add normal arguments to powershell that are only evaluated when the command is built.
+         *
+         * @param args The supplier of the arguments to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addArgs(final Supplier<? extends Collection<String>> args) {
+            this.inputArgs.add(InputArg.deferred(args, false));
             return this;
         }
 
@@ -276,7 +1116,7 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addArgs(final BooleanSupplier when, final Collection<String> args) {
             if (when.getAsBoolean()) {
-                this.inputArgs.addAll(args);
+                addNormalArgs(this.inputArgs, args);
             }
             return this;
         }
@@ -287,7 +1127,22 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addArg(final String arg) {
-            this.inputArgs.add(arg);
+            this.inputArgs.add(InputArg.normal(arg));
+            return this;
+        }
+
+        /**
+         * Use this to add normal argument to powershell that is only evaluated when the command is built.
+         * The PowerShellCache doesn't cache the command of a builder with a supplier, since it is evaluated on
+         * every build.
+         *
+         * @param arg The supplier of the single argument to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addArg(final Supplier<String> arg) {
+            this.inputArgs.add(InputArg.deferred(() -> List.of(arg.get()), false));
             return this;
         }
 
@@ -298,7 +1153,7 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addAdminModeHeader(final String header) {
-            this.adminModeHeader.add(header);
+            this.adminModeHeader.add(InputArg.normal(header));
             return this;
         }
 
@@ -310,7 +1165,7 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addAdminModeHeader(final BooleanSupplier when, final String header) {
             if (when.getAsBoolean()) {
-                this.adminModeHeader.add(header);
+                addAdminModeHeader(header);
             }
             return this;
         }
@@ -322,7 +1177,7 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addAdminModeHeaders(final Collection<String> headers) {
-            this.adminModeHeader.addAll(headers);
+            addNormalArgs(this.adminModeHeader, headers);
             return this;
         }
 
@@ -334,11 +1189,37 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addAdminModeHeaders(final BooleanSupplier when, final Collection<String> headers) {
             if (when.getAsBoolean()) {
-                this.adminModeHeader.addAll(headers);
+                addAdminModeHeaders(headers);
             }
             return this;
         }
 
+        /**
+         * Use this to add header command for adminModeLogic that is only evaluated when the command is built in admin mode.
+         *
+         * @param header The supplier of the single header command to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addAdminModeHeader(final Supplier<String> header) {
+            this.adminModeHeader.add(InputArg.deferred(() -> List.of(header.get()), false));
+            return this;
+        }
+
+        /**
+         * Use this to add header commands for adminModeLogic that are only evaluated when the command is built in admin mode.
+         *
+         * @param headers The supplier of the header commands to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addAdminModeHeaders(final Supplier<? extends Collection<String>> headers) {
+            this.adminModeHeader.add(InputArg.deferred(headers, false));
+            return this;
+        }
+
         /**
          * Use this to add normal arguments to powershell program itself.
          * @param args The arguments to be added.
@@ -392,9 +1273,21 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addEncodedArg(final String arg) {
-            final var encodedArg = PowerShell.encodeText(arg);
-            this.inputArgs.add(encodedArg);
-            this.encodedArgs.add(encodedArg);
+            this.inputArgs.add(InputArg.encoded(arg));
+            return this;
+        }
+
+        /**
+         * Use this to add normal encoded argument to powershell that is only evaluated when the command is built.
+         * This must be an argument to -EncodedCommand parameter.
+         *
+         * @param arg The supplier of the single argument to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addEncodedArg(final Supplier<String> arg) {
+            this.inputArgs.add(InputArg.deferred(() -> List.of(arg.get()), true));
             return this;
         }
 
@@ -420,7 +1313,7 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addArg(final BooleanSupplier when, final String arg) {
             if (when.getAsBoolean()) {
-                this.inputArgs.add(arg);
+                this.inputArgs.add(InputArg.normal(arg));
             }
             return this;
         }
@@ -431,7 +1324,20 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addZArgs(final Collection<String> args) {
-            this.inputZArgs.addAll(args);
+            addNormalArgs(this.inputZArgs, args);
+            return this;
+        }
+
+        /**
+         * Use this to add arguments after the normal arguments that are only evaluated when the command is built.
+         *
+         * @param args The supplier of the arguments to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addZArgs(final Supplier<? extends Collection<String>> args) {
+            this.inputZArgs.add(InputArg.deferred(args, false));
             return this;
         }
 
@@ -443,7 +1349,7 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addZArgs(final BooleanSupplier when, final Collection<String> args) {
             if (when.getAsBoolean()) {
-                this.inputZArgs.addAll(args);
+                addNormalArgs(this.inputZArgs, args);
             }
             return this;
         }
@@ -454,7 +1360,20 @@ public final class PowerShell implements ICommandArray {
          * @return An instance of PowerShellBuilder.
          */
         public PowerShellBuilder addZArg(final String arg) {
-            this.inputZArgs.add(arg);
+            this.inputZArgs.add(InputArg.normal(arg));
+            return this;
+        }
+
+        /**
+         * Use this to add an argument after the normal arguments that is only evaluated when the command is built.
+         *
+         * @param arg The supplier of the argument to be added.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder addZArg(final Supplier<String> arg) {
+            this.inputZArgs.add(InputArg.deferred(() -> List.of(arg.get()), false));
             return this;
         }
 
@@ -466,7 +1385,7 @@ public final class PowerShell implements ICommandArray {
          */
         public PowerShellBuilder addZArg(final BooleanSupplier when, final String arg) {
             if (when.getAsBoolean()) {
-                this.inputZArgs.add(arg);
+                this.inputZArgs.add(InputArg.normal(arg));
             }
             return this;
         }
@@ -524,5 +1443,244 @@ public final class PowerShell implements ICommandArray {
             this.isRawArgs = raw;
             return this;
         }
+
+        /**
+         * Write the script to a .ps1 file in the directory and use -File instead of -EncodedCommand when the
+         * command line would be longer than the maximum command line length. This applies to the admin mode command
+         * and to an encoded argument that directly follows the -EncodedCommand argument in any of its quoted forms
+         * (e.g. addArg("\"-EncodedCommand\"") or addArg("-EncodedCommand")). Such encoded argument must be
+         * the last argument, since the arguments after -File are passed to the script, otherwise build throws an
+         * IllegalStateException. The -ExecutionPolicy Bypass arguments are added before -File when the command
+         * doesn't have an execution policy (e.g. with noDefaultArgs).
+         * The file is named by the SHA-256 of the script, hence the same script is written only once.
+         * The template, the factory and buildAll ignore the script directory.
+         *
+         * @param scriptDirectory The directory of the script files. Null means never use a script file.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder setScriptDirectory(final Path scriptDirectory) {
+            this.scriptDirectory = scriptDirectory;
+            return this;
+        }
+
+        /**
+         * Use the persistent cache for the encoded admin mode script instead of encoding it on every build.
+         * This applies to the admin mode command without a custom admin mode logic.
+         *
+         * @param payloadCache The cache of the encoded scripts. Null means always encode.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder setPayloadCache(final PowerShellPayloadCache payloadCache) {
+            this.payloadCache = payloadCache;
+            return this;
+        }
+
+        /**
+         * Set the command line length that triggers the use of a script file. This is also the limit of the commands
+         * of buildSplit. The default is MAX_COMMAND_LINE_LENGTH.
+         *
+         * @param maxCommandLineLength The maximum length of the command line.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder setMaxCommandLineLength(final int maxCommandLineLength) {
+            if (maxCommandLineLength < 1) {
+                throw new IllegalArgumentException("The maxCommandLineLength must be at least 1.");
+            }
+            this.maxCommandLineLength = maxCommandLineLength;
+            return this;
+        }
+
+        /**
+         * Compress the encoded arguments and the admin mode script of at least the threshold length with GZip.
+         * The -EncodedCommand then holds a small stub that inflates the script with System.IO.Compression and
+         * runs it. The script is kept as is when the stub is not shorter. The default is 0 (i.e. disabled).
+         *
+         * @param compressionThreshold The number of characters from which the script is compressed or 0 to disable.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder setCompressionThreshold(final int compressionThreshold) {
+            if (compressionThreshold < 0) {
+                throw new IllegalArgumentException("The compressionThreshold must not be negative.");
+            }
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * Set the transformer of the scripts of addEncodedArg and of the admin mode headers before they are encoded
+         * (e.g. new PowerShellMinifier()). An admin mode header that becomes empty is dropped.
+         *
+         * @param scriptTransformer An implementation of IPSScriptTransformer or null to encode the scripts as is.
+         * @return An instance of PowerShellBuilder.
+         *
+         * @since 1.1.0
+         */
+        public PowerShellBuilder setScriptTransformer(final IPSScriptTransformer scriptTransformer) {
+            this.scriptTransformer = scriptTransformer;
+            return this;
+        }
+    }
+
+    /**
+     * An immutable PowerShell command with named slots for some of its arguments.
+     * Everything except the slots is processed once when the template is compiled,
+     * hence binding only processes the values of the slots.
+     * An instance of this class is safe to share between threads.
+     *
+     * @since 1.1.0
+     */
+    public final static class PowerShellTemplate {
+
+        private final boolean stopProgramName;
+        private final boolean isRawArgs;
+        private final List<String> prefixArgs;
+        private final String command;
+        private final String processedCommand;
+        private final Boolean adminMode;
+        private final IPSAdminModeLogic adminLogic;
+        private final List<String> adminModeHeader;
+        private final InputArg[] inputs;
+        private final String[] processedInputs;
+        private final int zArgsIndex;
+        private final Set<String> slots;
+        private final PowerShellBuilder source;
+        private final int compressionThreshold;
+
+        private PowerShellTemplate(final PowerShellBuilder builder) {
+            final var prefix = new ArrayList<String>();
+            final var addrPrefix = new ListAdder<>(prefix);
+            addrPrefix.addAll(()-> builder.hasDefaultArgs, PowerShellBuilder.DEFAULT_ARGS);
+            addrPrefix.addAll(()-> !builder.progArgs.isEmpty(), builder.progArgs);
+
+            this.stopProgramName = builder.stopProgramName;
+            this.isRawArgs = builder.isRawArgs;
+            this.prefixArgs = List.copyOf(prefix);
+            this.command = builder.command;
+            this.processedCommand = null == command ? null : PowerShellBuilder.processCommand(command);
+            this.adminMode = null == builder.isAdminMode ? null : builder.determineAdminMode();
+            this.adminLogic = builder.adminLogic;
+            this.adminModeHeader = List.copyOf(builder.getHeaders());
+            this.inputs = builder.getAllInputs().toArray(new InputArg[0]);
+            this.zArgsIndex = builder.inputArgs.size();
+            this.source = builder.copy();
+            this.compressionThreshold = builder.compressionThreshold;
+            final Set<String> slotNames = Arrays.stream(inputs)
+                    .filter(InputArg::isSlot)
+                    .map(InputArg::getValue)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            this.slots = Collections.unmodifiableSet(slotNames);
+            this.processedInputs = new String[inputs.length];
+            for (int idx = 0; idx < inputs.length; idx++) {
+                final var input = inputs[idx];
+                processedInputs[idx] = input.isSlot() ? null : builder.processInputArg(input);
+            }
+        }
+
+        private static String slotValue(final Map<String, String> values, final String name) {
+            final var value = values.get(name);
+            if (null == value) {
+                throw new IllegalArgumentException(String.format("The slot %s must have a value.", name));
+            }
+            return value;
+        }
+
+        private void bindInputs(final Map<String, String> values, final int start, final int end,
+                                final List<InputArg> boundInputs, final List<String> boundProcessedInputs) {
+            for (int idx = start; idx < end; idx++) {
+                final var input = inputs[idx];
+                if (input.isSlot()) {
+                    final var value = slotValue(values, input.getValue());
+                    boundInputs.add(InputArg.normal(value));
+                    boundProcessedInputs.add(PowerShellBuilder.processInputArg(value, isRawArgs));
+                }
+                else {
+                    boundInputs.add(input);
+                    boundProcessedInputs.add(processedInputs[idx]);
+                }
+            }
+        }
+
+        private void bindExtraInputs(final Collection<String> extraArgs, final List<InputArg> boundInputs,
+                                     final List<String> boundProcessedInputs) {
+            extraArgs.forEach(___arg -> {
+                boundInputs.add(InputArg.normal(___arg));
+                boundProcessedInputs.add(PowerShellBuilder.processInputArg(___arg, isRawArgs));
+            });
+        }
+
+        private PowerShell generate(final Map<String, String> values, final Collection<String> extraArgs,
+                                    final Collection<String> extraZArgs) {
+            final int inputCount = inputs.length + extraArgs.size() + extraZArgs.size();
+            final var boundInputs = new ArrayList<InputArg>(inputCount);
+            final var boundProcessedInputs = new ArrayList<String>(inputCount);
+            bindInputs(values, 0, zArgsIndex, boundInputs, boundProcessedInputs);
+            bindExtraInputs(extraArgs, boundInputs, boundProcessedInputs);
+            final int boundZArgsIndex = boundInputs.size();
+            bindInputs(values, zArgsIndex, inputs.length, boundInputs, boundProcessedInputs);
+            bindExtraInputs(extraZArgs, boundInputs, boundProcessedInputs);
+
+            final var psArgs = new ArrayList<>(prefixArgs);
+            final var internalCommand = Optional.ofNullable(command).orElse(PROGRAM);
+            if (null == adminMode) {
+                new ListAdder<>(psArgs).add(()-> null != processedCommand, processedCommand);
+                psArgs.addAll(boundProcessedInputs);
+            }
+            else if (null == adminLogic) {
+                PowerShellBuilder.addAdminModePArgs(psArgs, internalCommand);
+                psArgs.add(PowerShellBuilder.encodeAdminModeScript(adminMode, adminModeHeader, internalCommand,
+                        PowerShellBuilder.joinArgs(boundProcessedInputs, ","), compressionThreshold));
+            }
+            else {
+                psArgs.add(adminLogic.generate(adminMode, new ArrayList<>(adminModeHeader), psArgs, internalCommand,
+                        boundInputs.stream().map(InputArg::getValue).collect(Collectors.toList())));
+            }
+            return new PowerShell(toCommand(psArgs, stopProgramName), () -> source.withInputs(boundInputs, boundZArgsIndex));
+        }
+
+        /**
+         * The names of the slots of the template.
+         * @return The names of the slots.
+         */
+        public Set<String> getSlotNames() {
+            return slots;
+        }
+
+        /**
+         * Create an instance of PowerShell command array by providing the values of the slots.
+         * @param values The values of the slots by name.
+         * @return An instance of PowerShell command array.
+         */
+        public PowerShell bind(final Map<String, String> values) {
+            return bind(values, List.of(), List.of());
+        }
+
+        /**
+         * Create an instance of PowerShell command array with additional arguments.
+         * @param values The values of the slots by name.
+         * @param extraArgs The arguments after the normal arguments of the template.
+         * @param extraZArgs The arguments after the terminal arguments of the template.
+         * @return An instance of PowerShell command array.
+         */
+        PowerShell bind(final Map<String, String> values, final Collection<String> extraArgs,
+                        final Collection<String> extraZArgs) {
+            return generate(values, extraArgs, extraZArgs);
+        }
+
+        /**
+         * Generates the powershell command in arrays by providing the values of the slots.
+         * @param values The values of the slots by name.
+         * @return The command in array.
+         */
+        public String[] getCommand(final Map<String, String> values) {
+            return bind(values).getCommand();
+        }
     }
 }
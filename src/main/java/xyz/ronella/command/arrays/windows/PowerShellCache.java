@@ -0,0 +1,202 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded least recently used cache of the PowerShell command arrays keyed by the state of the builder.
+ * An instance of PowerShell is immutable, hence the cached instance is safe to share.
+ * An instance of this class is safe to use between threads.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellCache {
+
+    private final Object lock = new Object();
+    private final Map<List<Object>, CacheEntry> entries;
+    private final long timeToLive;
+    private final LongSupplier ticker;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    private PowerShellCache(final PowerShellCacheBuilder builder) {
+        final int maxSize = builder.maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, CacheEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.timeToLive = Optional.ofNullable(builder.timeToLive).map(Duration::toNanos).orElse(0L);
+        this.ticker = builder.ticker;
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    private static final class CacheEntry {
+        private final PowerShell powerShell;
+        private final long createdAt;
+
+        private CacheEntry(final PowerShell powerShell, final long createdAt) {
+            this.powerShell = powerShell;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private boolean isExpired(final CacheEntry entry, final long now) {
+        return timeToLive > 0 && now - entry.createdAt >= timeToLive;
+    }
+
+    private PowerShell lookup(final List<Object> key) {
+        PowerShell output = null;
+        synchronized (lock) {
+            final var entry = entries.get(key);
+            if (null != entry) {
+                if (isExpired(entry, ticker.getAsLong())) {
+                    entries.remove(key);
+                }
+                else {
+                    output = entry.powerShell;
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Returns the cached PowerShell of the same builder state or builds and caches a new one.
+     * The PowerShell of a builder with the deferred arguments or headers is built every time and never cached,
+     * hence each build evaluates the suppliers.
+     * @param builder The builder of the PowerShell command array.
+     * @return An instance of PowerShell command array.
+     */
+    public PowerShell getOrBuild(final PowerShell.PowerShellBuilder builder) {
+        final boolean isCacheable = !builder.hasDeferred();
+        final var key = isCacheable ? builder.getStateKey() : null;
+        var output = isCacheable ? lookup(key) : null;
+        PowerShellInstrumentation.getInstrumentation().cacheAccessed(PowerShellCache.class.getSimpleName(), null != output);
+        if (null == output) {
+            missCount.incrementAndGet();
+            output = builder.build();
+            if (isCacheable) {
+                final var entry = new CacheEntry(output, ticker.getAsLong());
+                synchronized (lock) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+        else {
+            hitCount.incrementAndGet();
+        }
+        return output;
+    }
+
+    /**
+     * The number of times the cached PowerShell was returned.
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of times a PowerShell was built.
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The number of PowerShell currently cached including the expired ones that were not yet evicted.
+     * @return The size of the cache.
+     */
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes all the cached PowerShell.
+     */
+    public void invalidateAll() {
+        synchronized (lock) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Access the builder of the PowerShellCache.
+     * @return An instance of PowerShellCacheBuilder.
+     */
+    public static PowerShellCacheBuilder getBuilder() {
+        return new PowerShellCacheBuilder();
+    }
+
+    /**
+     * The only class that can create an instance of PowerShellCache.
+     */
+    public final static class PowerShellCacheBuilder {
+
+        private static final int DEFAULT_MAX_SIZE = 256;
+        private int maxSize;
+        private Duration timeToLive;
+        private LongSupplier ticker;
+
+        private PowerShellCacheBuilder() {
+            maxSize = DEFAULT_MAX_SIZE;
+            ticker = System::nanoTime;
+        }
+
+        /**
+         * Create an instance of PowerShellCache.
+         * @return An instance of PowerShellCache.
+         */
+        public PowerShellCache build() {
+            return new PowerShellCache(this);
+        }
+
+        /**
+         * Set the maximum number of PowerShell to cache. The least recently used is evicted first.
+         * The default is 256.
+         * @param maxSize The maximum number of PowerShell to cache.
+         * @return An instance of PowerShellCacheBuilder.
+         */
+        public PowerShellCacheBuilder setMaxSize(final int maxSize) {
+            if (maxSize < 1) {
+                throw new IllegalArgumentException("The maxSize must be at least 1.");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Set how long a PowerShell is cached. The default is no expiry.
+         * @param timeToLive The time to live of each cached PowerShell. Null or zero means no expiry.
+         * @return An instance of PowerShellCacheBuilder.
+         */
+        public PowerShellCacheBuilder setTimeToLive(final Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Set the source of time in nanoseconds. This is meant for testing.
+         * @param ticker The source of time in nanoseconds.
+         * @return An instance of PowerShellCacheBuilder.
+         */
+        PowerShellCacheBuilder setTicker(final LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * An immutable factory of PowerShell command arrays that share the same base configuration.
+ * The base arguments are processed once and only the arguments of each call are processed.
+ * An instance of this class is safe to share between threads without locking. Its only mutable state is the encoded
+ * value of the encoded arguments, which is computed on first use and published through a volatile field.
+ * The scriptDirectory and the payloadCache of the base builder are ignored, hence the encoded scripts are always
+ * passed with -EncodedCommand.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellCommandFactory {
+
+    /**
+     * The number of commands below which a batch is no longer split between the threads of the ForkJoinPool.
+     */
+    public static final int BATCH_THRESHOLD = 256;
+
+    private final PowerShell.PowerShellTemplate template;
+
+    /**
+     * Creates the factory from the compiled base configuration.
+     * @param template The compiled base configuration without slots.
+     */
+    PowerShellCommandFactory(final PowerShell.PowerShellTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Create an instance of PowerShell command array with additional arguments.
+     * @param args The arguments after the normal arguments of the base configuration.
+     * @return An instance of PowerShell command array.
+     */
+    public PowerShell create(final Collection<String> args) {
+        return create(args, List.of());
+    }
+
+    /**
+     * Create an instance of PowerShell command array with additional arguments.
+     * @param args The arguments after the normal arguments of the base configuration.
+     * @param zArgs The arguments after the terminal arguments of the base configuration.
+     * @return An instance of PowerShell command array.
+     */
+    public PowerShell create(final Collection<String> args, final Collection<String> zArgs) {
+        return template.bind(Map.of(), args, zArgs);
+    }
+
+    /**
+     * Generates the powershell command in arrays with additional arguments.
+     * @param args The arguments after the normal arguments of the base configuration.
+     * @return The command in array.
+     */
+    public String[] getCommand(final Collection<String> args) {
+        return create(args).getCommand();
+    }
+
+    /**
+     * Generates the powershell command in arrays with additional arguments.
+     * @param args The arguments after the normal arguments of the base configuration.
+     * @param zArgs The arguments after the terminal arguments of the base configuration.
+     * @return The command in array.
+     */
+    public String[] getCommand(final Collection<String> args, final Collection<String> zArgs) {
+        return create(args, zArgs).getCommand();
+    }
+
+    /**
+     * Generates the powershell commands in arrays of many argument sets sharing the base configuration.
+     * @param argSets The arguments of each command. See the args parameter of the create method.
+     * @return The commands in array in the same order as the argSets.
+     */
+    public List<String[]> getCommands(final Collection<? extends Collection<String>> argSets) {
+        final var output = new ArrayList<String[]>(argSets.size());
+        argSets.forEach(___args -> output.add(getCommand(___args)));
+        return output;
+    }
+
+    /**
+     * Generates the powershell commands in arrays of many argument sets sharing the base configuration
+     * using the threads of the pool. A batch smaller than BATCH_THRESHOLD is generated by the calling thread.
+     * @param argSets The arguments of each command. See the args parameter of the create method.
+     * @param pool The pool that will generate the commands.
+     * @return The commands in array in the same order as the argSets.
+     */
+    public List<String[]> getCommands(final Collection<? extends Collection<String>> argSets, final ForkJoinPool pool) {
+        final List<? extends Collection<String>> inputs = new ArrayList<>(argSets);
+        final var output = new String[inputs.size()][];
+        final var task = new BatchAction(inputs, output, 0, inputs.size());
+        if (inputs.size() < BATCH_THRESHOLD) {
+            task.compute();
+        }
+        else {
+            pool.invoke(task);
+        }
+        return Arrays.asList(output);
+    }
+
+    /**
+     * Generates the powershell commands in arrays of many argument sets sharing the base configuration.
+     * The commands are generated lazily as the returned stream is consumed.
+     * @param argSets The arguments of each command. See the args parameter of the create method.
+     * @return The commands in array.
+     */
+    public Stream<String[]> getCommands(final Stream<? extends Collection<String>> argSets) {
+        return argSets.map(this::getCommand);
+    }
+
+    private final class BatchAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<? extends Collection<String>> inputs;
+        private final String[][] output;
+        private final int start;
+        private final int end;
+
+        private BatchAction(final List<? extends Collection<String>> inputs, final String[][] output,
+                            final int start, final int end) {
+            super();
+            this.inputs = inputs;
+            this.output = output;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= BATCH_THRESHOLD) {
+                for (int idx = start; idx < end; idx++) {
+                    output[idx] = getCommand(inputs.get(idx));
+                }
+            }
+            else {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new BatchAction(inputs, output, start, middle), new BatchAction(inputs, output, middle, end));
+            }
+        }
+    }
+}
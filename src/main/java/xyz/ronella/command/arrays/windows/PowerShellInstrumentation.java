@@ -0,0 +1,47 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the IPSInstrumentation used by the library. The default does nothing.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellInstrumentation {
+
+    /**
+     * The instrumentation that does nothing.
+     */
+    public static final IPSInstrumentation NO_OP = new IPSInstrumentation() {};
+
+    private static final AtomicReference<IPSInstrumentation> INSTRUMENTATION = new AtomicReference<>(NO_OP);
+
+    private PowerShellInstrumentation() {
+    }
+
+    /**
+     * The instrumentation used by the library.
+     * @return An instance of IPSInstrumentation.
+     */
+    public static IPSInstrumentation getInstrumentation() {
+        return INSTRUMENTATION.get();
+    }
+
+    /**
+     * Replace the instrumentation used by the library.
+     * @param instrumentation The new instrumentation. Passing null restores the NO_OP.
+     */
+    public static void setInstrumentation(final IPSInstrumentation instrumentation) {
+        INSTRUMENTATION.set(Optional.ofNullable(instrumentation).orElse(NO_OP));
+    }
+
+    /**
+     * Checks if the instrumentation does something. Use this to skip a measurement.
+     * @return True when the instrumentation is not the NO_OP.
+     */
+    static boolean isEnabled() {
+        return NO_OP != INSTRUMENTATION.get();
+    }
+}
@@ -0,0 +1,312 @@
+package xyz.ronella.command.arrays.windows;
+
+import xyz.ronella.trivial.handy.ICommandArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Launches the command arrays as processes on a bounded number of threads.
+ * The standard output and standard error of each process are drained by the thread that waits for it
+ * through a pooled buffer. When all the threads are busy and the queue is full, launch blocks the caller
+ * until a slot is available. The launchAsync method waits for the processes on virtual threads when the running JDK
+ * supports them, otherwise on the threads of the launcher. Either way, it is bounded by the same limit as launch.
+ * An instance of this class is safe to use between threads.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellLauncher implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final ExecutorService asyncExecutor;
+    private final Semaphore permits;
+    private final Semaphore running;
+    private final Queue<StreamPump> pumps;
+    private final int bufferSize;
+    private final File workingDirectory;
+    private final Charset charset;
+
+    private PowerShellLauncher(final PowerShellLauncherBuilder builder) {
+        final var threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(builder.maxConcurrent, builder.maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), ___runnable -> {
+                    final var thread = new Thread(___runnable, "powershell-launcher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.asyncExecutor = builder.useVirtualThreads ? VirtualThreads.newPerTaskExecutor().orElse(null) : null;
+        this.permits = new Semaphore(builder.maxConcurrent + builder.queueCapacity);
+        this.running = new Semaphore(builder.maxConcurrent);
+        this.pumps = new ConcurrentLinkedQueue<>();
+        this.bufferSize = builder.bufferSize;
+        this.workingDirectory = builder.workingDirectory;
+        this.charset = builder.charset;
+    }
+
+    private static List<String> toArgs(final ICommandArray command) {
+        return command instanceof PowerShell ? ((PowerShell) command).asList() : Arrays.asList(command.getCommand());
+    }
+
+    /**
+     * Creates a ProcessBuilder of the command array.
+     * @param command The command array to launch.
+     * @return An instance of ProcessBuilder.
+     */
+    public static ProcessBuilder toProcessBuilder(final ICommandArray command) {
+        return new ProcessBuilder(new ArrayList<>(toArgs(command)));
+    }
+
+    private StreamPump acquirePump() {
+        final var pump = pumps.poll();
+        return null == pump ? new StreamPump(bufferSize) : pump;
+    }
+
+    /**
+     * Launches the command array on the calling thread and waits for it to exit.
+     * The process is destroyed when the waiting doesn't complete (e.g. an interrupted thread).
+     * @param command The command array to launch.
+     * @return The outcome of the process.
+     * @throws IOException When the process cannot be started or its streams cannot be read.
+     * @throws InterruptedException When the thread was interrupted while waiting for the process.
+     */
+    public LaunchResult run(final ICommandArray command) throws IOException, InterruptedException {
+        final var processBuilder = new ProcessBuilder(toArgs(command)).directory(workingDirectory);
+        final var pump = acquirePump();
+        try {
+            return pump.pump(processBuilder.start(), charset);
+        }
+        finally {
+            pumps.offer(pump);
+        }
+    }
+
+    /**
+     * Launches the command array on one of the threads of the launcher.
+     * This blocks when the number of pending launches reached the maximum concurrent launches plus the queue capacity.
+     * Cancelling the future with Future.cancel(true) destroys the process.
+     * @param command The command array to launch.
+     * @return The outcome of the process when it exits.
+     * @throws InterruptedException When the thread was interrupted while waiting for a slot.
+     */
+    public Future<LaunchResult> launch(final ICommandArray command) throws InterruptedException {
+        permits.acquire();
+        try {
+            return executor.submit(() -> {
+                try {
+                    return run(command);
+                }
+                finally {
+                    permits.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException exception) {
+            permits.release();
+            throw exception;
+        }
+    }
+
+    private LaunchResult runVirtual(final ICommandArray command) throws IOException, InterruptedException {
+        running.acquire();
+        try {
+            return run(command);
+        }
+        finally {
+            running.release();
+        }
+    }
+
+    private static <T> void complete(final CompletableFuture<T> future, final Callable<T> task) {
+        try {
+            future.complete(task.call());
+        }
+        catch (Exception exception) {
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Runs the task on the executor when the pending launches are below the maximum concurrent launches plus the
+     * queue capacity. Otherwise, the future fails with RejectedExecutionException.
+     */
+    private void launchBounded(final Executor target, final Callable<LaunchResult> task,
+                               final CompletableFuture<LaunchResult> output) {
+        if (permits.tryAcquire()) {
+            try {
+                target.execute(() -> complete(output, () -> {
+                    try {
+                        return task.call();
+                    }
+                    finally {
+                        permits.release();
+                    }
+                }));
+            }
+            catch (RejectedExecutionException exception) {
+                permits.release();
+                output.completeExceptionally(exception);
+            }
+        }
+        else {
+            output.completeExceptionally(new RejectedExecutionException(
+                    "The pending launches reached the maximum concurrent launches plus the queue capacity."));
+        }
+    }
+
+    /**
+     * Launches the command array without blocking the caller.
+     * On a JDK with virtual threads, each launch waits on its own virtual thread and at most the maximum concurrent
+     * processes are running at the same time. Otherwise, the launch is queued on the threads of the launcher.
+     * Either way, the launch shares the limit of launch. When the number of pending launches reached the maximum
+     * concurrent launches plus the queue capacity, the future fails with RejectedExecutionException instead of
+     * blocking.
+     * @param command The command array to launch.
+     * @return The outcome of the process when it exits.
+     */
+    public CompletableFuture<LaunchResult> launchAsync(final ICommandArray command) {
+        final var output = new CompletableFuture<LaunchResult>();
+        if (null == asyncExecutor) {
+            launchBounded(executor, () -> run(command), output);
+        }
+        else {
+            launchBounded(asyncExecutor, () -> runVirtual(command), output);
+        }
+        return output;
+    }
+
+    /**
+     * Checks if launchAsync waits for the processes on virtual threads.
+     * @return True when virtual threads are used.
+     */
+    public boolean isUsingVirtualThreads() {
+        return null != asyncExecutor;
+    }
+
+    /**
+     * Stops accepting launches. The launches already accepted will still complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (null != asyncExecutor) {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Access the builder of the PowerShellLauncher.
+     * @return An instance of PowerShellLauncherBuilder.
+     */
+    public static PowerShellLauncherBuilder getBuilder() {
+        return new PowerShellLauncherBuilder();
+    }
+
+    /**
+     * The only class that can create an instance of PowerShellLauncher.
+     */
+    public final static class PowerShellLauncherBuilder {
+
+        private static final int DEFAULT_QUEUE_CAPACITY = 64;
+        private static final int DEFAULT_BUFFER_SIZE = 8192;
+        private int maxConcurrent;
+        private int queueCapacity;
+        private int bufferSize;
+        private File workingDirectory;
+        private Charset charset;
+        private boolean useVirtualThreads;
+
+        private PowerShellLauncherBuilder() {
+            maxConcurrent = Runtime.getRuntime().availableProcessors();
+            queueCapacity = DEFAULT_QUEUE_CAPACITY;
+            bufferSize = DEFAULT_BUFFER_SIZE;
+            charset = Charset.defaultCharset();
+            useVirtualThreads = true;
+        }
+
+        /**
+         * Create an instance of PowerShellLauncher.
+         * @return An instance of PowerShellLauncher.
+         */
+        public PowerShellLauncher build() {
+            return new PowerShellLauncher(this);
+        }
+
+        /**
+         * Set the maximum number of processes launched at the same time. The default is the number of processors.
+         * @param maxConcurrent The maximum number of processes launched at the same time.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setMaxConcurrent(final int maxConcurrent) {
+            if (maxConcurrent < 1) {
+                throw new IllegalArgumentException("The maxConcurrent must be at least 1.");
+            }
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        /**
+         * Set the number of launches that can wait for a thread before launch blocks the caller. The default is 64.
+         * @param queueCapacity The number of launches that can wait for a thread.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setQueueCapacity(final int queueCapacity) {
+            if (queueCapacity < 0) {
+                throw new IllegalArgumentException("The queueCapacity must not be negative.");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Set the size in bytes of the buffer that drains the processes. The default is 8192.
+         * @param bufferSize The size of the buffer in bytes.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setBufferSize(final int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("The bufferSize must be at least 1.");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Set the working directory of the processes. The default is the working directory of the current process.
+         * @param workingDirectory The working directory of the processes.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setWorkingDirectory(final File workingDirectory) {
+            this.workingDirectory = workingDirectory;
+            return this;
+        }
+
+        /**
+         * Set the charset of the output of the processes. The default is the default charset.
+         * @param charset The charset of the output of the processes.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setCharset(final Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Set to false to never use the virtual threads in launchAsync even when the running JDK supports them.
+         * The default is true.
+         * @param useVirtualThreads True to use the virtual threads when available.
+         * @return An instance of PowerShellLauncherBuilder.
+         */
+        public PowerShellLauncherBuilder setUseVirtualThreads(final boolean useVirtualThreads) {
+            this.useVirtualThreads = useVirtualThreads;
+            return this;
+        }
+    }
+}
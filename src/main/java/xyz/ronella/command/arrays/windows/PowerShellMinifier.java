@@ -0,0 +1,269 @@
+package xyz.ronella.command.arrays.windows;
+
+/**
+ * An IPSScriptTransformer that removes the comments, blank lines, indentation and redundant whitespace of a script.
+ * The string literals and here-strings are left untouched and the new lines are kept as statement terminators.
+ * The tokenizer is conservative, hence the script is returned as is when it has a construct that it doesn't
+ * fully understand (e.g. an unterminated string, ${braced variable}, a subexpression in a double-quoted string,
+ * the --% stop-parsing token, the smart quotes or a # that is neither a comment nor inside a string).
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellMinifier implements IPSScriptTransformer {
+
+    private static final String REQUIRES = "#requires";
+    private static final String STOP_PARSING = "--%";
+    private static final String SMART_QUOTES = "\u2018\u2019\u201A\u201B\u201C\u201D\u201E";
+    private static final String COMMENT_PRECEDERS = ";{}()|,=";
+    private static final char NO_CHAR = 0;
+
+    /**
+     * Thrown by the tokenizer for a construct that it doesn't fully understand.
+     */
+    private static final class UnsupportedScriptException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedScriptException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The state of minifying one script.
+     */
+    private static final class Tokenizer {
+        private final String text;
+        private final StringBuilder output;
+        private int pos;
+        private boolean hasContent;
+        private boolean hasSpace;
+
+        private Tokenizer(final String text) {
+            this.text = text;
+            this.output = new StringBuilder(text.length());
+        }
+
+        private char charAt(final int idx) {
+            return idx < text.length() ? text.charAt(idx) : NO_CHAR;
+        }
+
+        private static boolean isNewLine(final char chr) {
+            return chr == '\n' || chr == '\r';
+        }
+
+        private static boolean isSpace(final char chr) {
+            return chr == ' ' || chr == '\t' || chr == '\f' || chr == '\u000B' || chr == '\u00A0';
+        }
+
+        /**
+         * Checks if the # starts a comment (i.e. after a whitespace, an operator or a punctuation).
+         */
+        private boolean isTokenStart() {
+            final char previous = pos == 0 ? NO_CHAR : text.charAt(pos - 1);
+            return pos == 0 || isSpace(previous) || isNewLine(previous) || COMMENT_PRECEDERS.indexOf(previous) > -1;
+        }
+
+        private void separate() {
+            if (hasSpace && hasContent) {
+                output.append(' ');
+            }
+            hasSpace = false;
+            hasContent = true;
+        }
+
+        private void emit(final int end) {
+            separate();
+            output.append(text, pos, end);
+            pos = end;
+        }
+
+        private void endLine() {
+            if (hasContent) {
+                output.append('\n');
+            }
+            hasContent = false;
+            hasSpace = false;
+            pos += text.startsWith("\r\n", pos) ? 2 : 1;
+        }
+
+        private int lineEnd(final int start) {
+            int idx = start;
+            while (idx < text.length() && !isNewLine(text.charAt(idx))) {
+                idx++;
+            }
+            return idx;
+        }
+
+        private int singleQuotedEnd(final int start) {
+            int idx = start + 1;
+            int output = -1;
+            while (idx < text.length() && output < 0) {
+                if (text.charAt(idx) == '\'') {
+                    if (charAt(idx + 1) == '\'') {
+                        idx++;
+                    }
+                    else {
+                        output = idx + 1;
+                    }
+                }
+                idx++;
+            }
+            return checkEnd(output);
+        }
+
+        private int doubleQuotedEnd(final int start) {
+            int idx = start + 1;
+            int output = -1;
+            while (idx < text.length() && output < 0) {
+                final char chr = text.charAt(idx);
+                if (chr == '`') {
+                    idx++;
+                }
+                else if (chr == '$' && charAt(idx + 1) == '(') {
+                    throw new UnsupportedScriptException();
+                }
+                else if (chr == '"') {
+                    if (charAt(idx + 1) == '"') {
+                        idx++;
+                    }
+                    else {
+                        output = idx + 1;
+                    }
+                }
+                idx++;
+            }
+            return checkEnd(output);
+        }
+
+        private boolean isHereStringStart() {
+            final char quote = charAt(pos + 1);
+            return (quote == '\'' || quote == '"') && lineEnd(pos + 2) == skipSpaces(pos + 2);
+        }
+
+        private int skipSpaces(final int start) {
+            int idx = start;
+            while (idx < text.length() && isSpace(text.charAt(idx))) {
+                idx++;
+            }
+            return idx;
+        }
+
+        private int hereStringEnd() {
+            final char quote = charAt(pos + 1);
+            int idx = lineEnd(pos + 2);
+            int output = -1;
+            while (idx < text.length() && output < 0) {
+                idx += text.startsWith("\r\n", idx) ? 2 : 1;
+                if (charAt(idx) == quote && charAt(idx + 1) == '@') {
+                    output = idx + 2;
+                }
+                else {
+                    idx = lineEnd(idx);
+                }
+            }
+            return checkEnd(output);
+        }
+
+        private static int checkEnd(final int end) {
+            if (end < 0) {
+                throw new UnsupportedScriptException();
+            }
+            return end;
+        }
+
+        private int blockCommentEnd() {
+            return checkEnd(text.indexOf("#>", pos + 2)) + 2;
+        }
+
+        private void escape() {
+            separate();
+            output.append('`');
+            pos++;
+            if (pos < text.length()) {
+                if (isNewLine(text.charAt(pos))) {
+                    output.append('\n');
+                    pos += text.startsWith("\r\n", pos) ? 2 : 1;
+                }
+                else {
+                    output.append(text.charAt(pos++));
+                }
+            }
+        }
+
+        private void comment() {
+            if (!hasContent && text.regionMatches(true, pos, REQUIRES, 0, REQUIRES.length())) {
+                emit(lineEnd(pos));
+            }
+            else {
+                pos = lineEnd(pos);
+            }
+        }
+
+        private void checkSupported(final char chr) {
+            if (chr == '$' && charAt(pos + 1) == '{' || text.startsWith(STOP_PARSING, pos)
+                    || SMART_QUOTES.indexOf(chr) > -1) {
+                throw new UnsupportedScriptException();
+            }
+        }
+
+        private void next() {
+            final char chr = text.charAt(pos);
+            checkSupported(chr);
+            if (isNewLine(chr)) {
+                endLine();
+            }
+            else if (isSpace(chr)) {
+                hasSpace = true;
+                pos++;
+            }
+            else if (chr == '#') {
+                if (!isTokenStart()) {
+                    throw new UnsupportedScriptException();
+                }
+                comment();
+            }
+            else if (chr == '<' && charAt(pos + 1) == '#') {
+                pos = blockCommentEnd();
+            }
+            else if (chr == '`') {
+                escape();
+            }
+            else if (chr == '@' && isHereStringStart()) {
+                emit(hereStringEnd());
+            }
+            else if (chr == '\'') {
+                emit(singleQuotedEnd(pos));
+            }
+            else if (chr == '"') {
+                emit(doubleQuotedEnd(pos));
+            }
+            else {
+                emit(pos + 1);
+            }
+        }
+
+        private String minify() {
+            while (pos < text.length()) {
+                next();
+            }
+            final int length = output.length();
+            if (length > 0 && output.charAt(length - 1) == '\n') {
+                output.setLength(length - 1);
+            }
+            return output.toString();
+        }
+    }
+
+    @Override
+    public String transform(final String script) {
+        String output;
+        try {
+            output = new Tokenizer(script).minify();
+        }
+        catch (UnsupportedScriptException exception) {
+            output = script;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,306 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of the encoded admin mode scripts keyed by the SHA-256 of the script.
+ * The keys are in a memory mapped index file and the encoded scripts are appended to a data file, hence the
+ * cache survives the restart of the JVM and can be shared by many processes.
+ * An entry is checked with its CRC32 before it is used, so a damaged entry is simply encoded again.
+ * When the index is full, the new scripts are encoded but not cached.
+ * An instance of this class is safe to use between threads. Use only one instance per directory in a JVM.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellPayloadCache implements AutoCloseable {
+
+    /**
+     * The name of the index file.
+     */
+    public static final String INDEX_FILE = "payloads.idx";
+
+    /**
+     * The name of the data file.
+     */
+    public static final String DATA_FILE = "payloads.dat";
+
+    private static final int MAGIC = 0x43415043;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int KEY_SIZE = 32;
+    private static final int SLOT_SIZE = KEY_SIZE + 8 + 4 + 4;
+    private static final int OFFSET_AT = KEY_SIZE;
+    private static final int CRC_AT = OFFSET_AT + 8;
+    private static final int LENGTH_AT = CRC_AT + 4;
+    private static final int MAX_PROBES = 64;
+    private static final int NOT_FOUND = -1;
+    private static final String DIGEST = "SHA-256";
+
+    private final FileChannel index;
+    private final FileChannel data;
+    private final MappedByteBuffer slots;
+    private final int capacity;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    private PowerShellPayloadCache(final PowerShellPayloadCacheBuilder builder) throws IOException {
+        Files.createDirectories(builder.directory);
+        this.index = FileChannel.open(builder.directory.resolve(INDEX_FILE), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.data = FileChannel.open(builder.directory.resolve(DATA_FILE), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        final var lock = index.lock();
+        try {
+            this.capacity = initIndex(builder.capacity);
+        }
+        finally {
+            lock.release();
+        }
+        this.slots = index.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+    }
+
+    private int initIndex(final int newCapacity) throws IOException {
+        final var header = ByteBuffer.allocate(HEADER_SIZE);
+        final int output;
+        if (index.size() < HEADER_SIZE) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(newCapacity).flip();
+            index.write(header, 0);
+            index.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) newCapacity * SLOT_SIZE - 1);
+            output = newCapacity;
+        }
+        else {
+            index.read(header, 0);
+            header.flip();
+            if (MAGIC != header.getInt() || VERSION != header.getInt()) {
+                throw new IOException("The index file is not a payload cache index.");
+            }
+            output = header.getInt();
+        }
+        return output;
+    }
+
+    private static byte[] keyOf(final CharSequence script) {
+        try {
+            final var content = StandardCharsets.UTF_8.encode(CharBuffer.wrap(script));
+            final var digest = MessageDigest.getInstance(DIGEST);
+            digest.update(content);
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private int slotAt(final int slot) {
+        return Math.toIntExact(HEADER_SIZE + (long) slot * SLOT_SIZE);
+    }
+
+    /**
+     * The slot of the probe that wraps around the index without overflowing when the start is near the maximum.
+     */
+    static int probeSlot(final int start, final int probe, final int capacity) {
+        return (int) (((long) start % capacity + probe) % capacity);
+    }
+
+    private boolean isKey(final int position, final byte[] key) {
+        boolean output = true;
+        for (int idx = 0; idx < KEY_SIZE && output; idx++) {
+            output = slots.get(position + idx) == key[idx];
+        }
+        return output;
+    }
+
+    /**
+     * Finds the slot of the key or the empty slot where it can be added.
+     * @return The position of the slot or NOT_FOUND when all the probed slots are used by other keys.
+     */
+    private int probe(final byte[] key) {
+        final int start = ((key[0] & 0xFF) << 24 | (key[1] & 0xFF) << 16 | (key[2] & 0xFF) << 8 | key[3] & 0xFF)
+                & Integer.MAX_VALUE;
+        int output = NOT_FOUND;
+        for (int idx = 0; idx < Math.min(MAX_PROBES, capacity) && NOT_FOUND == output; idx++) {
+            final int position = slotAt(probeSlot(start, idx, capacity));
+            if (0 == slots.getInt(position + LENGTH_AT) || isKey(position, key)) {
+                output = position;
+            }
+        }
+        return output;
+    }
+
+    private static int crcOf(final byte[] payload) {
+        final var crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private String read(final int position) throws IOException {
+        String output = null;
+        final int length = slots.getInt(position + LENGTH_AT);
+        if (length > 0) {
+            final long offset = slots.getLong(position + OFFSET_AT);
+            final var buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && data.read(buffer, offset + buffer.position()) > 0) {
+                // Read until the whole payload is in the buffer.
+            }
+            final var payload = buffer.array();
+            if (!buffer.hasRemaining() && crcOf(payload) == slots.getInt(position + CRC_AT)) {
+                output = new String(payload, StandardCharsets.US_ASCII);
+            }
+        }
+        return output;
+    }
+
+    private synchronized void write(final byte[] key, final String encoded) throws IOException {
+        final var lock = index.lock();
+        try {
+            final int position = probe(key);
+            if (NOT_FOUND != position && null == read(position)) {
+                final var payload = encoded.getBytes(StandardCharsets.US_ASCII);
+                final long offset = data.size();
+                final var buffer = ByteBuffer.wrap(payload);
+                while (buffer.hasRemaining()) {
+                    data.write(buffer, offset + buffer.position());
+                }
+                slots.putInt(position + LENGTH_AT, 0);
+                for (int idx = 0; idx < KEY_SIZE; idx++) {
+                    slots.put(position + idx, key[idx]);
+                }
+                slots.putLong(position + OFFSET_AT, offset);
+                slots.putInt(position + CRC_AT, crcOf(payload));
+                slots.putInt(position + LENGTH_AT, payload.length);
+            }
+        }
+        finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Returns the cached encoded script or encodes and caches the script.
+     * @param script The script to encode.
+     * @return The script encoded to UTF-16LE Base64 (i.e. same as PowerShell.encodeText).
+     */
+    public String getOrEncode(final CharSequence script) {
+        final var key = keyOf(script);
+        try {
+            final int position = probe(key);
+            String output = NOT_FOUND == position || !isKey(position, key) ? null : read(position);
+            PowerShellInstrumentation.getInstrumentation().cacheAccessed(PowerShellPayloadCache.class.getSimpleName(),
+                    null != output);
+            if (null == output) {
+                missCount.incrementAndGet();
+                output = Utf16LeBase64Encoder.encode(script);
+                write(key, output);
+            }
+            else {
+                hitCount.incrementAndGet();
+            }
+            return output;
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * The number of times the cached encoded script was returned.
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of times a script was encoded.
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Closes the files of the cache.
+     * @throws IOException When a file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        slots.force();
+        try {
+            index.close();
+        }
+        finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Access the builder of the PowerShellPayloadCache.
+     * @return An instance of PowerShellPayloadCacheBuilder.
+     */
+    public static PowerShellPayloadCacheBuilder getBuilder() {
+        return new PowerShellPayloadCacheBuilder();
+    }
+
+    /**
+     * The only class that can create an instance of PowerShellPayloadCache.
+     */
+    public final static class PowerShellPayloadCacheBuilder {
+
+        private static final int DEFAULT_CAPACITY = 4096;
+        private Path directory;
+        private int capacity;
+
+        private PowerShellPayloadCacheBuilder() {
+            directory = Path.of(System.getProperty("java.io.tmpdir"), "command-arrays-cache");
+            capacity = DEFAULT_CAPACITY;
+        }
+
+        /**
+         * Opens or creates the files of the cache and creates an instance of PowerShellPayloadCache.
+         * @return An instance of PowerShellPayloadCache.
+         * @throws IOException When the files cannot be opened or created.
+         */
+        public PowerShellPayloadCache build() throws IOException {
+            return new PowerShellPayloadCache(this);
+        }
+
+        /**
+         * Set the directory of the files of the cache. The default is command-arrays-cache in the temp directory.
+         * @param directory The directory of the files of the cache.
+         * @return An instance of PowerShellPayloadCacheBuilder.
+         */
+        public PowerShellPayloadCacheBuilder setDirectory(final Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Set the number of entries of a new index. An existing index keeps its capacity. The default is 4096.
+         * @param capacity The number of entries of the index.
+         * @return An instance of PowerShellPayloadCacheBuilder.
+         */
+        public PowerShellPayloadCacheBuilder setCapacity(final int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("The capacity must be at least 1.");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+    }
+}
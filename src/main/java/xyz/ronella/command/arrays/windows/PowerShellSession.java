@@ -0,0 +1,425 @@
+package xyz.ronella.command.arrays.windows;
+
+import xyz.ronella.trivial.handy.ICommandArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived powershell.exe that reads the scripts from its standard input (i.e. -Command -).
+ * This avoids the start-up of powershell.exe for each command. Each script is encoded to Base64 and executed as
+ * a single line, followed by a new line and a marker that delimits its output and holds its exit code.
+ * The scripts of an instance of this class are executed one at a time. When a script doesn't complete within the
+ * timeout, the interpreter is destroyed.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellSession implements AutoCloseable {
+
+    /**
+     * The framing that writes the Base64 encoded script to a temporary .ps1 file and calls it in powershell.exe.
+     * An exit in a script file only ends that script and sets $LASTEXITCODE, hence the exit of a script
+     * (e.g. the Exit (Start-Process ...).ExitCode of the admin mode command) becomes its exit code instead of ending
+     * the session. The interpreter must allow running the script files (e.g. -ExecutionPolicy Bypass).
+     */
+    public static final IPSSessionFraming POWERSHELL_FRAMING = (___script, ___marker) ->
+            "$__caCode=0;$global:LASTEXITCODE=0;"
+            + "$__caFile=Join-Path ([IO.Path]::GetTempPath()) ('command-arrays-'+[Guid]::NewGuid()+'.ps1');"
+            + "try{[IO.File]::WriteAllText($__caFile,[Text.Encoding]::Unicode.GetString("
+            + "[Convert]::FromBase64String('" + PowerShell.encodeText(___script) + "')),[Text.Encoding]::UTF8);"
+            + "& $__caFile | Out-String -Stream | ForEach-Object {[Console]::Out.WriteLine($_)};"
+            + "if(-not $?){$__caCode=1};if($LASTEXITCODE){$__caCode=$LASTEXITCODE}}"
+            + "catch{[Console]::Error.WriteLine($_);$__caCode=1}"
+            + "finally{Remove-Item -LiteralPath $__caFile -Force -ErrorAction SilentlyContinue};"
+            + "[Console]::Out.WriteLine();[Console]::Out.WriteLine('" + ___marker + "'+$__caCode);"
+            + "[Console]::Out.Flush();"
+            + "[Console]::Error.WriteLine();[Console]::Error.WriteLine('" + ___marker + "');[Console]::Error.Flush()";
+
+    private static final String ENCODED_COMMAND = "-EncodedCommand";
+    private static final String EXIT = "exit";
+    private static final long EXIT_WAIT_SECONDS = 5L;
+    private static final int END_OF_STREAM = -1;
+
+    private final Process process;
+    private final Writer input;
+    private final Object lock = new Object();
+    private final FramedStream output;
+    private final FramedStream error;
+    private final IPSSessionFraming framing;
+    private final String marker;
+    private final Charset charset;
+    private final long timeout;
+
+    private PowerShellSession(final PowerShellSessionBuilder builder) throws IOException {
+        this.process = new ProcessBuilder(List.of(builder.interpreter.getCommand()))
+                .directory(builder.workingDirectory)
+                .start();
+        this.charset = builder.charset;
+        this.input = new OutputStreamWriter(process.getOutputStream(), charset);
+        this.marker = "__COMMAND_ARRAYS_" + UUID.randomUUID().toString().replace("-", "") + "__";
+        this.output = new FramedStream(process.getInputStream(), marker.getBytes(charset), builder.bufferSize);
+        this.error = new FramedStream(process.getErrorStream(), marker.getBytes(charset), builder.bufferSize);
+        this.framing = builder.framing;
+        this.timeout = null == builder.timeout ? 0L : builder.timeout.toNanos();
+        output.start("command-arrays-session-output");
+        error.start("command-arrays-session-error");
+    }
+
+    /**
+     * The output of one stream of the interpreter up to the marker line.
+     * The stream is read by its own thread with a blocking read.
+     */
+    private final class FramedStream implements Runnable {
+        private final InputStream stream;
+        private final byte[] markerBytes;
+        private final byte[] buffer;
+        private byte[] content;
+        private int size;
+        private int lineStart;
+        private int markerAt;
+        private int markerEnd;
+        private boolean isEnded;
+
+        private FramedStream(final InputStream stream, final byte[] markerBytes, final int bufferSize) {
+            this.stream = stream;
+            this.markerBytes = markerBytes.clone();
+            this.buffer = new byte[bufferSize];
+            this.content = new byte[markerBytes.length * 2];
+            this.markerAt = END_OF_STREAM;
+        }
+
+        private void start(final String name) {
+            final var thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Keeps the output after the marker line of the previous script (e.g. from a background job).
+         */
+        private void reset() {
+            final int from = isFramed() ? markerEnd + 1 : 0;
+            System.arraycopy(content, from, content, 0, size - from);
+            size -= from;
+            lineStart = 0;
+            markerAt = END_OF_STREAM;
+            scan(0);
+        }
+
+        private boolean isFramed() {
+            return END_OF_STREAM != markerAt;
+        }
+
+        private boolean isMarkerLine(final int start) {
+            boolean output = size - start >= markerBytes.length;
+            for (int idx = 0; idx < markerBytes.length && output; idx++) {
+                output = content[start + idx] == markerBytes[idx];
+            }
+            return output;
+        }
+
+        private void scan(final int from) {
+            for (int idx = from; idx < size && !isFramed(); idx++) {
+                if ('\n' == content[idx]) {
+                    if (isMarkerLine(lineStart)) {
+                        markerAt = lineStart;
+                        markerEnd = idx;
+                    }
+                    else {
+                        lineStart = idx + 1;
+                    }
+                }
+            }
+        }
+
+        private void append(final int length) {
+            if (size + length > content.length) {
+                content = Arrays.copyOf(content, Math.max(content.length * 2, size + length));
+            }
+            System.arraycopy(buffer, 0, content, size, length);
+            final int scanFrom = size;
+            size += length;
+            scan(scanFrom);
+        }
+
+        @Override
+        public void run() {
+            try {
+                int read = stream.read(buffer);
+                while (END_OF_STREAM != read) {
+                    synchronized (lock) {
+                        append(read);
+                        lock.notifyAll();
+                    }
+                    read = stream.read(buffer);
+                }
+            }
+            catch (IOException exception) {
+                // The stream was closed with the interpreter.
+            }
+            finally {
+                synchronized (lock) {
+                    isEnded = true;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * The output without the new line that the framing writes before the marker.
+         */
+        private String getContent() {
+            int end = markerAt;
+            if (end > 0 && '\n' == content[end - 1]) {
+                end--;
+                if (end > 0 && '\r' == content[end - 1]) {
+                    end--;
+                }
+            }
+            return new String(content, 0, end, charset);
+        }
+
+        private String getTail() {
+            final int start = markerAt + markerBytes.length;
+            return new String(content, start, markerEnd - start, charset).trim();
+        }
+    }
+
+    private static String findEncodedCommand(final List<String> args) {
+        String output = null;
+        for (int idx = 0; idx < args.size() - 1 && null == output; idx++) {
+            if (ArgClassifier.isFlag(args.get(idx), ENCODED_COMMAND)) {
+                output = args.get(idx + 1);
+            }
+        }
+        return output;
+    }
+
+    private long remainingMillis(final long start) {
+        return timeout > 0 ? TimeUnit.NANOSECONDS.toMillis(timeout - (System.nanoTime() - start)) : 0L;
+    }
+
+    private LaunchResult waitForResult() throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        synchronized (lock) {
+            while (!(output.isFramed() && error.isFramed())) {
+                if (output.isEnded || error.isEnded) {
+                    throw new IOException("The session ended before the script completed.");
+                }
+                final long remaining = remainingMillis(start);
+                if (timeout > 0 && remaining <= 0) {
+                    throw new IOException("The script didn't complete within the timeout. The session was destroyed.");
+                }
+                lock.wait(remaining);
+            }
+            return new LaunchResult(Integer.parseInt(output.getTail()), output.getContent(), error.getContent());
+        }
+    }
+
+    private void destroy() {
+        try {
+            process.destroyForcibly().waitFor(EXIT_WAIT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes the script in the session and waits for it to complete. The interpreter is destroyed when the script
+     * doesn't complete normally (e.g. a timeout or an interrupted thread), hence the next script never reads the
+     * output of an abandoned one.
+     * @param script The script to execute.
+     * @return The outcome of the script.
+     * @throws IOException When the session ended, cannot be written or the script didn't complete within the timeout.
+     * @throws InterruptedException When the thread was interrupted while waiting for the script.
+     */
+    public synchronized LaunchResult execute(final String script) throws IOException, InterruptedException {
+        boolean isCompleted = false;
+        try {
+            synchronized (lock) {
+                output.reset();
+                error.reset();
+            }
+            input.write(framing.frame(script, marker));
+            input.write(System.lineSeparator());
+            input.flush();
+            final var result = waitForResult();
+            isCompleted = true;
+            return result;
+        }
+        finally {
+            if (!isCompleted) {
+                destroy();
+            }
+        }
+    }
+
+    /**
+     * Executes the encoded command of the PowerShell in the session (e.g. the admin mode command or a command
+     * with an encoded argument).
+     * @param command A PowerShell with the -EncodedCommand argument.
+     * @return The outcome of the script.
+     * @throws IOException When the session ended, cannot be written or the script didn't complete within the timeout.
+     * @throws InterruptedException When the thread was interrupted while waiting for the script.
+     */
+    public LaunchResult execute(final PowerShell command) throws IOException, InterruptedException {
+        final var encoded = findEncodedCommand(command.asList());
+        if (null == encoded) {
+            throw new IllegalArgumentException("The command doesn't have an -EncodedCommand argument.");
+        }
+        return execute(new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_16LE));
+    }
+
+    /**
+     * Checks if the interpreter of the session is still running.
+     * @return True when the interpreter is running.
+     */
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Ends the interpreter of the session. The interpreter is destroyed when it doesn't exit within 5 seconds.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (process.isAlive()) {
+                input.write(EXIT);
+                input.write(System.lineSeparator());
+                input.close();
+            }
+            if (!process.waitFor(EXIT_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        catch (IOException exception) {
+            process.destroyForcibly();
+        }
+        catch (InterruptedException exception) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Access the builder of the PowerShellSession.
+     * @return An instance of PowerShellSessionBuilder.
+     */
+    public static PowerShellSessionBuilder getBuilder() {
+        return new PowerShellSessionBuilder();
+    }
+
+    /**
+     * The only class that can create an instance of PowerShellSession.
+     */
+    public final static class PowerShellSessionBuilder {
+
+        private static final int DEFAULT_BUFFER_SIZE = 8192;
+        private ICommandArray interpreter;
+        private IPSSessionFraming framing;
+        private int bufferSize;
+        private File workingDirectory;
+        private Charset charset;
+        private Duration timeout;
+
+        private PowerShellSessionBuilder() {
+            interpreter = PowerShell.getBuilder()
+                    .addPArgs(List.of("-NoProfile", "-NonInteractive", "-ExecutionPolicy", "Bypass", "-Command", "-"))
+                    .build();
+            framing = POWERSHELL_FRAMING;
+            bufferSize = DEFAULT_BUFFER_SIZE;
+            charset = Charset.defaultCharset();
+        }
+
+        /**
+         * Starts the interpreter and creates an instance of PowerShellSession.
+         * @return An instance of PowerShellSession.
+         * @throws IOException When the interpreter cannot be started.
+         */
+        public PowerShellSession build() throws IOException {
+            return new PowerShellSession(this);
+        }
+
+        /**
+         * Set the command array of the interpreter that reads the scripts from its standard input.
+         * The default is powershell.exe -NoProfile -NonInteractive -ExecutionPolicy Bypass -Command -.
+         * @param interpreter The command array of the interpreter.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setInterpreter(final ICommandArray interpreter) {
+            this.interpreter = interpreter;
+            return this;
+        }
+
+        /**
+         * Set how the script is wrapped for the interpreter. The default is POWERSHELL_FRAMING.
+         * @param framing The framing of the scripts.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setFraming(final IPSSessionFraming framing) {
+            this.framing = framing;
+            return this;
+        }
+
+        /**
+         * Set the size in bytes of the buffer that reads the interpreter. The default is 8192.
+         * @param bufferSize The size of the buffer in bytes.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setBufferSize(final int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("The bufferSize must be at least 1.");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Set the working directory of the interpreter.
+         * @param workingDirectory The working directory of the interpreter.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setWorkingDirectory(final File workingDirectory) {
+            this.workingDirectory = workingDirectory;
+            return this;
+        }
+
+        /**
+         * Set the charset of the input and output of the interpreter. The default is the default charset.
+         * @param charset The charset of the interpreter.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setCharset(final Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Set how long execute waits for a script. When it expires, the interpreter is destroyed and execute throws
+         * an IOException. The default is no timeout.
+         * @param timeout The maximum duration of a script or null for no timeout.
+         * @return An instance of PowerShellSessionBuilder.
+         */
+        public PowerShellSessionBuilder setTimeout(final Duration timeout) {
+            if (null != timeout && (timeout.isNegative() || timeout.isZero())) {
+                throw new IllegalArgumentException("The timeout must be positive.");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+    }
+}
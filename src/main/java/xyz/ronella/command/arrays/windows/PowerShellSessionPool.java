@@ -0,0 +1,567 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A pool of warm PowerShellSession. The callers waiting for a session are served in the order they arrived.
+ * A session is recycled after a number of scripts or when its memory grew beyond a limit, and an idle session
+ * is evicted after a while but never below the minimum size.
+ * The runAs commands can be routed to a dedicated pool of elevated sessions.
+ * An instance of this class is safe to use between threads.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+public final class PowerShellSessionPool implements AutoCloseable {
+
+    /**
+     * The script that writes the working set in bytes of the powershell.exe of the session.
+     */
+    public static final String MEMORY_SCRIPT = "[System.Diagnostics.Process]::GetCurrentProcess().WorkingSet64";
+
+    private final Workers workers;
+    private final Workers elevatedWorkers;
+    private final ScheduledExecutorService maintenance;
+
+    private PowerShellSessionPool(final PowerShellSessionPoolBuilder builder) throws IOException {
+        this.workers = new Workers(builder, builder.sessionBuilder);
+        this.elevatedWorkers = null == builder.elevatedSessionBuilder ? null
+                : new Workers(builder, builder.elevatedSessionBuilder);
+        this.workers.fill();
+        if (null != elevatedWorkers) {
+            elevatedWorkers.fill();
+        }
+        if (null == builder.maintenanceInterval || builder.maintenanceInterval.isZero()) {
+            this.maintenance = null;
+        }
+        else {
+            this.maintenance = Executors.newSingleThreadScheduledExecutor(___runnable -> {
+                final var thread = new Thread(___runnable, "powershell-session-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long interval = builder.maintenanceInterval.toMillis();
+            maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class PooledSession {
+        private final PowerShellSession session;
+        private int scriptCount;
+        private long lastUsed;
+
+        private PooledSession(final PowerShellSession session, final long lastUsed) {
+            this.session = session;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * The sessions of the same interpreter.
+     */
+    private static final class Workers {
+        private final Object lock = new Object();
+        private final Deque<PooledSession> idle;
+        private final Semaphore permits;
+        private final PowerShellSession.PowerShellSessionBuilder sessionBuilder;
+        private final int minSize;
+        private final int maxScripts;
+        private final long maxMemory;
+        private final String memoryScript;
+        private final String healthCheckScript;
+        private final long idleTimeout;
+        private final LongSupplier ticker;
+        private int size;
+        private boolean isClosed;
+
+        private Workers(final PowerShellSessionPoolBuilder builder,
+                        final PowerShellSession.PowerShellSessionBuilder sessionBuilder) {
+            this.idle = new ArrayDeque<>();
+            this.permits = new Semaphore(builder.maxSize, true);
+            this.sessionBuilder = sessionBuilder;
+            this.minSize = builder.minSize;
+            this.maxScripts = builder.maxScripts;
+            this.maxMemory = builder.maxMemory;
+            this.memoryScript = builder.memoryScript;
+            this.healthCheckScript = builder.healthCheckScript;
+            this.idleTimeout = null == builder.idleTimeout ? 0L : builder.idleTimeout.toNanos();
+            this.ticker = builder.ticker;
+        }
+
+        private PooledSession create() throws IOException {
+            synchronized (lock) {
+                size++;
+            }
+            try {
+                return new PooledSession(sessionBuilder.build(), ticker.getAsLong());
+            }
+            catch (IOException exception) {
+                synchronized (lock) {
+                    size--;
+                }
+                throw exception;
+            }
+        }
+
+        private void discard(final PooledSession pooled) {
+            synchronized (lock) {
+                size--;
+            }
+            pooled.session.close();
+        }
+
+        private void fill() throws IOException {
+            boolean isShort;
+            synchronized (lock) {
+                isShort = !isClosed && size < minSize;
+            }
+            while (isShort) {
+                final var pooled = create();
+                synchronized (lock) {
+                    idle.offerLast(pooled);
+                    isShort = !isClosed && size < minSize;
+                }
+            }
+        }
+
+        private PooledSession borrow() throws IOException, InterruptedException {
+            permits.acquire();
+            PooledSession output;
+            synchronized (lock) {
+                if (isClosed) {
+                    permits.release();
+                    throw new IllegalStateException("The pool was already closed.");
+                }
+                output = idle.pollFirst();
+            }
+            while (null != output && !output.session.isAlive()) {
+                discard(output);
+                synchronized (lock) {
+                    output = idle.pollFirst();
+                }
+            }
+            try {
+                return null == output ? create() : output;
+            }
+            catch (IOException exception) {
+                permits.release();
+                throw exception;
+            }
+        }
+
+        private boolean isRecyclable(final PooledSession pooled) {
+            return !pooled.session.isAlive() || maxScripts > 0 && pooled.scriptCount >= maxScripts;
+        }
+
+        /**
+         * Returns the session to the idle sessions. A session whose task failed is discarded, since it may still
+         * hold the output of the abandoned script.
+         */
+        private void giveBack(final PooledSession pooled, final boolean isFailed) {
+            pooled.scriptCount++;
+            pooled.lastUsed = ticker.getAsLong();
+            boolean isDiscarded = isFailed || isRecyclable(pooled);
+            if (!isDiscarded) {
+                synchronized (lock) {
+                    isDiscarded = isClosed;
+                    if (!isDiscarded) {
+                        idle.offerFirst(pooled);
+                    }
+                }
+            }
+            if (isDiscarded) {
+                discard(pooled);
+            }
+            permits.release();
+        }
+
+        private LaunchResult execute(final IScriptTask task) throws IOException, InterruptedException {
+            final var pooled = borrow();
+            boolean isFailed = true;
+            try {
+                final var output = task.execute(pooled.session);
+                isFailed = false;
+                return output;
+            }
+            finally {
+                giveBack(pooled, isFailed);
+            }
+        }
+
+        private boolean isHealthy(final PooledSession pooled) {
+            boolean output = pooled.session.isAlive();
+            try {
+                if (output && null != healthCheckScript) {
+                    output = 0 == pooled.session.execute(healthCheckScript).getExitCode();
+                }
+                if (output && maxMemory > 0) {
+                    output = Long.parseLong(pooled.session.execute(memoryScript).getOutput().trim()) <= maxMemory;
+                }
+            }
+            catch (IOException | NumberFormatException exception) {
+                output = false;
+            }
+            catch (InterruptedException exception) {
+                output = false;
+                Thread.currentThread().interrupt();
+            }
+            return output;
+        }
+
+        private List<PooledSession> takeIdle() {
+            final List<PooledSession> output = new ArrayList<>();
+            synchronized (lock) {
+                while (!idle.isEmpty() && permits.tryAcquire()) {
+                    output.add(idle.pollLast());
+                }
+            }
+            return output;
+        }
+
+        private void maintain() throws IOException {
+            final long now = ticker.getAsLong();
+            for (final var pooled : takeIdle()) {
+                boolean isEvicted = !isHealthy(pooled);
+                if (!isEvicted && idleTimeout > 0 && now - pooled.lastUsed >= idleTimeout) {
+                    synchronized (lock) {
+                        isEvicted = size > minSize;
+                    }
+                }
+                if (isEvicted) {
+                    discard(pooled);
+                }
+                else {
+                    synchronized (lock) {
+                        idle.offerLast(pooled);
+                    }
+                }
+                permits.release();
+            }
+            fill();
+        }
+
+        private int getSize() {
+            synchronized (lock) {
+                return size;
+            }
+        }
+
+        private int getIdleCount() {
+            synchronized (lock) {
+                return idle.size();
+            }
+        }
+
+        private void close() {
+            final List<PooledSession> sessions;
+            synchronized (lock) {
+                isClosed = true;
+                sessions = new ArrayList<>(idle);
+                idle.clear();
+            }
+            sessions.forEach(this::discard);
+        }
+    }
+
+    /**
+     * The work done with a borrowed session.
+     */
+    @FunctionalInterface
+    private interface IScriptTask {
+        LaunchResult execute(PowerShellSession session) throws IOException, InterruptedException;
+    }
+
+    private Workers getElevatedWorkers() {
+        if (null == elevatedWorkers) {
+            throw new IllegalStateException("The pool has no elevated sessions.");
+        }
+        return elevatedWorkers;
+    }
+
+    /**
+     * Executes the script in one of the sessions. This waits when all the sessions are busy and the pool is at its
+     * maximum size.
+     * @param script The script to execute.
+     * @return The outcome of the script.
+     * @throws IOException When the session ended or cannot be started.
+     * @throws InterruptedException When the thread was interrupted while waiting.
+     */
+    public LaunchResult execute(final String script) throws IOException, InterruptedException {
+        return workers.execute(___session -> ___session.execute(script));
+    }
+
+    /**
+     * Executes the script in one of the elevated sessions.
+     * @param script The script to execute.
+     * @return The outcome of the script.
+     * @throws IOException When the session ended or cannot be started.
+     * @throws InterruptedException When the thread was interrupted while waiting.
+     */
+    public LaunchResult executeElevated(final String script) throws IOException, InterruptedException {
+        return getElevatedWorkers().execute(___session -> ___session.execute(script));
+    }
+
+    /**
+     * Executes the encoded command of the PowerShell in one of the sessions.
+     * @param command A PowerShell with the -EncodedCommand argument.
+     * @return The outcome of the script.
+     * @throws IOException When the session ended or cannot be started.
+     * @throws InterruptedException When the thread was interrupted while waiting.
+     */
+    public LaunchResult execute(final PowerShell command) throws IOException, InterruptedException {
+        return workers.execute(___session -> ___session.execute(command));
+    }
+
+    /**
+     * Executes the command of the builder in one of the sessions. When the builder will generate the runAs
+     * command array, the headers, the command and its arguments are executed as a script in one of the elevated
+     * sessions without the Start-Process that would start another process.
+     * @param builder The builder of a command with an -EncodedCommand argument (e.g. the admin mode).
+     * @return The outcome of the script.
+     * @throws IOException When the session ended or cannot be started.
+     * @throws InterruptedException When the thread was interrupted while waiting.
+     */
+    public LaunchResult execute(final PowerShell.PowerShellBuilder builder) throws IOException, InterruptedException {
+        final LaunchResult output;
+        if (builder.isRunAs()) {
+            output = executeElevated(builder.toRunAsScript());
+        }
+        else {
+            output = execute(builder.build());
+        }
+        return output;
+    }
+
+    /**
+     * Evicts the unhealthy and idle sessions then starts the sessions to reach the minimum size.
+     * This is done periodically when the maintenance interval is set.
+     */
+    void maintain() {
+        try {
+            workers.maintain();
+            if (null != elevatedWorkers) {
+                elevatedWorkers.maintain();
+            }
+        }
+        catch (IOException exception) {
+            // The missing sessions will be started on the next maintenance or when borrowed.
+        }
+    }
+
+    /**
+     * The number of sessions including the busy ones.
+     * @return The number of sessions.
+     */
+    public int getSize() {
+        return workers.getSize();
+    }
+
+    /**
+     * The number of sessions waiting for a script.
+     * @return The number of idle sessions.
+     */
+    public int getIdleCount() {
+        return workers.getIdleCount();
+    }
+
+    /**
+     * The number of elevated sessions including the busy ones.
+     * @return The number of elevated sessions.
+     */
+    public int getElevatedSize() {
+        return null == elevatedWorkers ? 0 : elevatedWorkers.getSize();
+    }
+
+    /**
+     * Ends the idle sessions and the busy sessions as soon as their scripts complete.
+     */
+    @Override
+    public void close() {
+        if (null != maintenance) {
+            maintenance.shutdownNow();
+        }
+        workers.close();
+        if (null != elevatedWorkers) {
+            elevatedWorkers.close();
+        }
+    }
+
+    /**
+     * Access the builder of the PowerShellSessionPool.
+     * @return An instance of PowerShellSessionPoolBuilder.
+     */
+    public static PowerShellSessionPoolBuilder getBuilder() {
+        return new PowerShellSessionPoolBuilder();
+    }
+
+    /**
+     * The only class that can create an instance of PowerShellSessionPool.
+     */
+    public final static class PowerShellSessionPoolBuilder {
+
+        private static final int DEFAULT_MAX_SIZE = 4;
+        private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+        private static final Duration DEFAULT_MAINTENANCE_INTERVAL = Duration.ofSeconds(30);
+        private PowerShellSession.PowerShellSessionBuilder sessionBuilder;
+        private PowerShellSession.PowerShellSessionBuilder elevatedSessionBuilder;
+        private int minSize;
+        private int maxSize;
+        private int maxScripts;
+        private long maxMemory;
+        private String memoryScript;
+        private String healthCheckScript;
+        private Duration idleTimeout;
+        private Duration maintenanceInterval;
+        private LongSupplier ticker;
+
+        private PowerShellSessionPoolBuilder() {
+            sessionBuilder = PowerShellSession.getBuilder();
+            maxSize = DEFAULT_MAX_SIZE;
+            memoryScript = MEMORY_SCRIPT;
+            idleTimeout = DEFAULT_IDLE_TIMEOUT;
+            maintenanceInterval = DEFAULT_MAINTENANCE_INTERVAL;
+            ticker = System::nanoTime;
+        }
+
+        /**
+         * Starts the minimum number of sessions and creates an instance of PowerShellSessionPool.
+         * @return An instance of PowerShellSessionPool.
+         * @throws IOException When a session cannot be started.
+         */
+        public PowerShellSessionPool build() throws IOException {
+            if (minSize > maxSize) {
+                throw new IllegalArgumentException("The minSize must not be greater than the maxSize.");
+            }
+            return new PowerShellSessionPool(this);
+        }
+
+        /**
+         * Set the builder of the sessions. The default is PowerShellSession.getBuilder().
+         * @param sessionBuilder The builder of the sessions.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setSessionBuilder(final PowerShellSession.PowerShellSessionBuilder sessionBuilder) {
+            this.sessionBuilder = sessionBuilder;
+            return this;
+        }
+
+        /**
+         * Set the builder of the elevated sessions (e.g. an interpreter already running in runAs mode).
+         * The runAs commands are routed to these sessions. The default is no elevated sessions.
+         * @param elevatedSessionBuilder The builder of the elevated sessions.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setElevatedSessionBuilder(final PowerShellSession.PowerShellSessionBuilder elevatedSessionBuilder) {
+            this.elevatedSessionBuilder = elevatedSessionBuilder;
+            return this;
+        }
+
+        /**
+         * Set the number of sessions that are always started. The default is 0.
+         * @param minSize The minimum number of sessions.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMinSize(final int minSize) {
+            if (minSize < 0) {
+                throw new IllegalArgumentException("The minSize must not be negative.");
+            }
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of sessions. The default is 4.
+         * @param maxSize The maximum number of sessions.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMaxSize(final int maxSize) {
+            if (maxSize < 1) {
+                throw new IllegalArgumentException("The maxSize must be at least 1.");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Set the number of scripts a session executes before it is recycled. The default is 0 (i.e. never).
+         * @param maxScripts The number of scripts per session.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMaxScripts(final int maxScripts) {
+            this.maxScripts = maxScripts;
+            return this;
+        }
+
+        /**
+         * Set the memory in bytes a session can use before it is recycled by the maintenance.
+         * The default is 0 (i.e. no limit).
+         * @param maxMemory The memory limit in bytes.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMaxMemory(final long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        /**
+         * Set the script that writes the memory in bytes used by the session. The default is MEMORY_SCRIPT.
+         * @param memoryScript The script that writes the memory in bytes.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMemoryScript(final String memoryScript) {
+            this.memoryScript = memoryScript;
+            return this;
+        }
+
+        /**
+         * Set the script that must exit with 0 for an idle session to be kept by the maintenance.
+         * The default is only checking that the session is still running.
+         * @param healthCheckScript The script of the health check.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setHealthCheckScript(final String healthCheckScript) {
+            this.healthCheckScript = healthCheckScript;
+            return this;
+        }
+
+        /**
+         * Set how long a session above the minimum size can be idle before it is evicted. The default is 5 minutes.
+         * @param idleTimeout How long a session can be idle. Null or zero means never evicted.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setIdleTimeout(final Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Set how often the sessions are checked. The default is 30 seconds.
+         * @param maintenanceInterval How often the sessions are checked. Null or zero means never.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        public PowerShellSessionPoolBuilder setMaintenanceInterval(final Duration maintenanceInterval) {
+            this.maintenanceInterval = maintenanceInterval;
+            return this;
+        }
+
+        /**
+         * Set the source of time in nanoseconds. This is meant for testing.
+         * @param ticker The source of time in nanoseconds.
+         * @return An instance of PowerShellSessionPoolBuilder.
+         */
+        PowerShellSessionPoolBuilder setTicker(final LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+    }
+}
@@ -4,24 +4,33 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The class that checks if the service can write in SystemRoot.
+ * The result of the check is computed once and reused until refreshed.
  *
  * @author Ron Webb
  * @since 1.0.0
  */
 public final class RunAsChecker {
 
-    private RunAsChecker() {
-    }
-
     /**
-     * Check if running in elevated mode.
+     * The default probe that checks if the service can write in SystemRoot.
      *
-     * @return True when running in elevated mode.
+     * @since 1.1.0
      */
-    public static boolean isElevatedMode() {
+    public static final IElevationProbe SYSTEM_ROOT_PROBE = RunAsChecker::canWriteInSystemRoot;
+
+    private static final Object LOCK = new Object();
+    private static final AtomicReference<IElevationProbe> PROBE = new AtomicReference<>(SYSTEM_ROOT_PROBE);
+    private static final AtomicReference<Boolean> ELEVATED = new AtomicReference<>();
+
+    private RunAsChecker() {
+    }
+
+    private static boolean canWriteInSystemRoot() {
         final String pid = ManagementFactory.getRuntimeMXBean().getName().replace("@", "-");
         final String fileName = String.format("runas-checker-%s.dummy", pid);
         final File file = Paths.get(System.getenv("SystemRoot"), fileName).toFile();
@@ -40,4 +49,51 @@ public final class RunAsChecker {
         }
         return output;
     }
+
+    /**
+     * Check if running in elevated mode.
+     * The probe is only called once until the refresh method is called.
+     *
+     * @return True when running in elevated mode.
+     */
+    public static boolean isElevatedMode() {
+        Boolean output = ELEVATED.get();
+        if (null == output) {
+            synchronized (LOCK) {
+                output = ELEVATED.get();
+                if (null == output) {
+                    final long start = System.nanoTime();
+                    output = PROBE.get().isElevated();
+                    PowerShellInstrumentation.getInstrumentation().elevationChecked(output, System.nanoTime() - start);
+                    ELEVATED.set(output);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Discard the cached result so that the next isElevatedMode call will use the probe again.
+     *
+     * @since 1.1.0
+     */
+    public static void refresh() {
+        synchronized (LOCK) {
+            ELEVATED.set(null);
+        }
+    }
+
+    /**
+     * Replace the probe used by isElevatedMode. This also discards the cached result.
+     *
+     * @param probe The new probe. Passing null restores the SYSTEM_ROOT_PROBE.
+     *
+     * @since 1.1.0
+     */
+    public static void setProbe(final IElevationProbe probe) {
+        synchronized (LOCK) {
+            PROBE.set(Optional.ofNullable(probe).orElse(SYSTEM_ROOT_PROBE));
+            ELEVATED.set(null);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Writes the scripts as .ps1 files named by the SHA-256 of their content.
+ * The same script is written only once and the file is never partially visible.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class ScriptFiles {
+
+    /**
+     * The prefix of the name of the script files.
+     */
+    public static final String PREFIX = "command-arrays-";
+
+    /**
+     * The extension of the script files.
+     */
+    public static final String EXTENSION = ".ps1";
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final String DIGEST = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xF;
+
+    private ScriptFiles() {
+    }
+
+    private static String sha256(final ByteBuffer content) {
+        try {
+            final var digest = MessageDigest.getInstance(DIGEST).digest(toArray(content.duplicate()));
+            final var output = new StringBuilder(digest.length * 2);
+            for (final byte value : digest) {
+                output.append(HEX[value >>> NIBBLE_BITS & NIBBLE_MASK]).append(HEX[value & NIBBLE_MASK]);
+            }
+            return output.toString();
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static byte[] toArray(final ByteBuffer content) {
+        final var output = new byte[content.remaining()];
+        content.get(output);
+        return output;
+    }
+
+    private static void writeTemp(final Path temp, final ByteBuffer content) throws IOException {
+        try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var bom = ByteBuffer.wrap(UTF8_BOM);
+            while (bom.hasRemaining()) {
+                channel.write(bom);
+            }
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * Writes the script as UTF-8 with BOM unless the same script was already written.
+     * @param directory The directory of the script files.
+     * @param script The script.
+     * @return The path of the script file.
+     */
+    static Path write(final Path directory, final CharSequence script) {
+        final var content = StandardCharsets.UTF_8.encode(CharBuffer.wrap(script));
+        final var output = directory.resolve(PREFIX + sha256(content) + EXTENSION);
+        if (!Files.exists(output)) {
+            try {
+                Files.createDirectories(directory);
+                final var temp = Files.createTempFile(directory, PREFIX, ".tmp");
+                try {
+                    writeTemp(temp, content);
+                    Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (FileAlreadyExistsException exception) {
+                    // Another writer created the same script first.
+                }
+                finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,109 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Drains the standard output and standard error of a process on the calling thread through one reusable buffer.
+ * This avoids a gobbler thread for each stream of the process. The waiting is done with Thread.sleep
+ * so that a virtual thread doesn't pin its carrier thread.
+ * An instance of this class must only be used by one thread at a time.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class StreamPump {
+
+    private static final long POLL_MILLIS = 10L;
+    private static final int END_OF_STREAM = -1;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a pump with its own buffer.
+     * @param bufferSize The size of the buffer in bytes.
+     */
+    StreamPump(final int bufferSize) {
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    private int read(final InputStream stream, final int maxBytes) throws IOException {
+        buffer.clear();
+        final int read = stream.read(buffer.array(), buffer.arrayOffset(), Math.min(maxBytes, buffer.capacity()));
+        if (read > 0) {
+            buffer.position(read);
+            buffer.flip();
+        }
+        return read;
+    }
+
+    private void write(final ByteArrayOutputStream sink) {
+        sink.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    private int drainAvailable(final InputStream stream, final ByteArrayOutputStream sink) throws IOException {
+        int total = 0;
+        int available = stream.available();
+        while (available > 0) {
+            final int read = read(stream, available);
+            if (read > 0) {
+                write(sink);
+                total += read;
+                available = stream.available();
+            }
+            else {
+                available = 0;
+            }
+        }
+        return total;
+    }
+
+    private void drainAll(final InputStream stream, final ByteArrayOutputStream sink) throws IOException {
+        int read = read(stream, buffer.capacity());
+        while (END_OF_STREAM != read) {
+            if (read > 0) {
+                write(sink);
+            }
+            read = read(stream, buffer.capacity());
+        }
+    }
+
+    /**
+     * Drains the process until it exits. The process is destroyed when the draining doesn't complete
+     * (e.g. the thread was interrupted by Future.cancel), hence it is never left running without a reader.
+     * @param process The process to drain.
+     * @param charset The charset of the output of the process.
+     * @return The outcome of the process.
+     * @throws IOException When the streams of the process cannot be read.
+     * @throws InterruptedException When the thread was interrupted while waiting for the process.
+     */
+    LaunchResult pump(final Process process, final Charset charset) throws IOException, InterruptedException {
+        final var output = new ByteArrayOutputStream();
+        final var error = new ByteArrayOutputStream();
+        final LaunchResult result;
+        try (var stdout = process.getInputStream(); var stderr = process.getErrorStream()) {
+            process.getOutputStream().close();
+            boolean isAlive = true;
+            while (isAlive) {
+                final int read = drainAvailable(stdout, output) + drainAvailable(stderr, error);
+                if (0 == read) {
+                    isAlive = process.isAlive();
+                    if (isAlive) {
+                        Thread.sleep(POLL_MILLIS);
+                    }
+                }
+            }
+            drainAll(stdout, output);
+            drainAll(stderr, error);
+            result = new LaunchResult(process.waitFor(), output.toString(charset), error.toString(charset));
+        }
+        catch (IOException | InterruptedException exception) {
+            process.destroyForcibly();
+            throw exception;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,368 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes characters as UTF-16LE Base64 directly to a StringBuilder without the intermediate byte array.
+ * The text can be appended in pieces and the output is the same as encoding the whole text at once.
+ * A Prefix captures the state of the encoder so that encoding of the same leading text can be resumed many times.
+ * A text of at least the parallel threshold is encoded in 3-char aligned chunks on the common ForkJoinPool.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class Utf16LeBase64Encoder {
+
+    /**
+     * The number of characters that produces whole Base64 groups (i.e. 3 chars = 6 bytes = 8 Base64 chars).
+     */
+    public static final int CHARS_PER_GROUP = 3;
+
+    /**
+     * The number of Base64 characters produced by CHARS_PER_GROUP characters.
+     */
+    public static final int ENCODED_CHARS_PER_GROUP = 8;
+
+    /**
+     * The default number of characters from which encode uses the parallel encoding.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+
+    private static final int MIN_CHUNK_CHARS = CHARS_PER_GROUP << 15;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final AtomicInteger PARALLEL_THRESHOLD = new AtomicInteger(DEFAULT_PARALLEL_THRESHOLD);
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int BYTES_PER_CHAR = 2;
+    private static final int BYTES_PER_SIXTETS = 3;
+    private static final int CHARS_PER_SIXTETS = 4;
+    private static final char PAD = '=';
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+    private static final char NO_CHAR = 0;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int SIXTET_MASK = 0x3F;
+
+    private final StringBuilder output;
+    private final char[] pending;
+    private int pendingCount;
+    private char highSurrogate;
+
+    /**
+     * Creates an encoder that appends to the output.
+     * @param output The receiver of the Base64 characters.
+     */
+    public Utf16LeBase64Encoder(final StringBuilder output) {
+        this.output = output;
+        this.pending = new char[CHARS_PER_GROUP];
+    }
+
+    /**
+     * Computes the length of the Base64 text of the UTF-16LE encoded characters.
+     * @param charCount The number of characters to encode.
+     * @return The number of Base64 characters.
+     */
+    public static int encodedLength(final int charCount) {
+        return (charCount * BYTES_PER_CHAR + BYTES_PER_SIXTETS - 1) / BYTES_PER_SIXTETS * CHARS_PER_SIXTETS;
+    }
+
+    /**
+     * Encodes the text to UTF-16LE Base64.
+     * @param text The text to encode.
+     * @return The Base64 text.
+     */
+    public static String encode(final CharSequence text) {
+        final String output;
+        if (text.length() >= PARALLEL_THRESHOLD.get()) {
+            output = encodeParallel(text, ForkJoinPool.commonPool());
+        }
+        else {
+            output = new Utf16LeBase64Encoder(new StringBuilder(encodedLength(text.length())))
+                    .append(text)
+                    .finish()
+                    .toString();
+        }
+        return output;
+    }
+
+    /**
+     * The number of characters from which encode uses the parallel encoding.
+     * @return The parallel threshold.
+     */
+    public static int getParallelThreshold() {
+        return PARALLEL_THRESHOLD.get();
+    }
+
+    /**
+     * Sets the number of characters from which encode uses the parallel encoding.
+     * @param threshold A positive number of characters. Use Integer.MAX_VALUE to always encode sequentially.
+     */
+    public static void setParallelThreshold(final int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("The threshold must be positive.");
+        }
+        PARALLEL_THRESHOLD.set(threshold);
+    }
+
+    /**
+     * Encodes the text in 3-char aligned chunks on the pool. The output is the same as the sequential encoding.
+     * The text must not be modified while it is encoded.
+     * @param text The text to encode.
+     * @param pool The pool that encodes the chunks.
+     * @return The Base64 text.
+     */
+    public static String encodeParallel(final CharSequence text, final ForkJoinPool pool) {
+        final int length = text.length();
+        final var output = new char[encodedLength(length)];
+        final int chunks = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+        final int chunkChars = Math.max(MIN_CHUNK_CHARS, (length / chunks + CHARS_PER_GROUP - 1)
+                / CHARS_PER_GROUP * CHARS_PER_GROUP);
+        pool.invoke(new ChunkTask(text, 0, length, output, chunkChars));
+        return new String(output);
+    }
+
+    /**
+     * Encodes a range of the text that starts at a group boundary into its place in the output.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CharSequence text;
+        private final int start;
+        private final int end;
+        private final char[] output;
+        private final int chunkChars;
+
+        private ChunkTask(final CharSequence text, final int start, final int end, final char[] output,
+                          final int chunkChars) {
+            super();
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.output = output;
+            this.chunkChars = chunkChars;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= chunkChars) {
+                encodeRange(text, start, end, output);
+            }
+            else {
+                final int mid = start + (end - start) / 2 / CHARS_PER_GROUP * CHARS_PER_GROUP;
+                invokeAll(new ChunkTask(text, start, mid, output, chunkChars),
+                        new ChunkTask(text, mid, end, output, chunkChars));
+            }
+        }
+    }
+
+    private static char validCharAt(final CharSequence text, final int idx) {
+        final char chr = text.charAt(idx);
+        char output = chr;
+        if (Character.isHighSurrogate(chr)) {
+            if (idx + 1 >= text.length() || !Character.isLowSurrogate(text.charAt(idx + 1))) {
+                output = REPLACEMENT_CHAR;
+            }
+        }
+        else if (Character.isLowSurrogate(chr) && (idx == 0 || !Character.isHighSurrogate(text.charAt(idx - 1)))) {
+            output = REPLACEMENT_CHAR;
+        }
+        return output;
+    }
+
+    private static void writeSixtets(final char[] output, final int pos, final int first, final int second,
+                                     final int third) {
+        final int bits = (first & BYTE_MASK) << 16 | (second & BYTE_MASK) << 8 | third & BYTE_MASK;
+        output[pos] = ALPHABET[bits >>> 18 & SIXTET_MASK];
+        output[pos + 1] = ALPHABET[bits >>> 12 & SIXTET_MASK];
+        output[pos + 2] = ALPHABET[bits >>> 6 & SIXTET_MASK];
+        output[pos + 3] = ALPHABET[bits & SIXTET_MASK];
+    }
+
+    private static void encodeRange(final CharSequence text, final int start, final int end, final char[] output) {
+        int pos = start / CHARS_PER_GROUP * ENCODED_CHARS_PER_GROUP;
+        int idx = start;
+        for (; idx + CHARS_PER_GROUP <= end; idx += CHARS_PER_GROUP) {
+            final char first = validCharAt(text, idx);
+            final char second = validCharAt(text, idx + 1);
+            final char third = validCharAt(text, idx + 2);
+            writeSixtets(output, pos, first, first >>> 8, second);
+            writeSixtets(output, pos + CHARS_PER_SIXTETS, second >>> 8, third, third >>> 8);
+            pos += ENCODED_CHARS_PER_GROUP;
+        }
+
+        final int remaining = end - idx;
+        if (remaining == 1) {
+            final char first = validCharAt(text, idx);
+            writeSixtets(output, pos, first, first >>> 8, 0);
+            output[pos + 3] = PAD;
+        }
+        else if (remaining == 2) {
+            final char first = validCharAt(text, idx);
+            final char second = validCharAt(text, idx + 1);
+            writeSixtets(output, pos, first, first >>> 8, second);
+            writeSixtets(output, pos + CHARS_PER_SIXTETS, second >>> 8, 0, 0);
+            output[pos + 6] = PAD;
+            output[pos + 7] = PAD;
+        }
+    }
+
+    /**
+     * The captured state of an encoder. It holds the whole Base64 groups produced so far and the characters that
+     * are still waiting to complete a group.
+     */
+    static final class Prefix {
+        private final String encoded;
+        private final String carry;
+        private final char highSurrogate;
+
+        private Prefix(final String encoded, final String carry, final char highSurrogate) {
+            this.encoded = encoded;
+            this.carry = carry;
+            this.highSurrogate = highSurrogate;
+        }
+
+        /**
+         * The whole Base64 groups of the prefix.
+         * @return The Base64 text without padding.
+         */
+        public String getEncoded() {
+            return encoded;
+        }
+
+        /**
+         * Creates an encoder that continues from this prefix.
+         * @param output The receiver of the Base64 characters. The encoded prefix is appended to it first.
+         * @return A new instance of Utf16LeBase64Encoder.
+         */
+        public Utf16LeBase64Encoder resume(final StringBuilder output) {
+            final var encoder = new Utf16LeBase64Encoder(output.append(encoded));
+            for (int idx = 0; idx < carry.length(); idx++) {
+                encoder.pending[idx] = carry.charAt(idx);
+            }
+            encoder.pendingCount = carry.length();
+            encoder.highSurrogate = highSurrogate;
+            return encoder;
+        }
+    }
+
+    /**
+     * Encodes the text without finishing it so that it can be resumed many times.
+     * @param text The leading text to encode.
+     * @return An instance of Prefix.
+     */
+    public static Prefix prefix(final CharSequence text) {
+        return new Utf16LeBase64Encoder(new StringBuilder(encodedLength(text.length())))
+                .append(text)
+                .toPrefix();
+    }
+
+    /**
+     * Captures the current state of the encoder. The whole content of the output is treated as encoded by this
+     * encoder.
+     * @return An instance of Prefix.
+     */
+    public Prefix toPrefix() {
+        return new Prefix(output.toString(), new String(pending, 0, pendingCount), highSurrogate);
+    }
+
+    private void appendSixtets(final int first, final int second, final int third) {
+        final int bits = (first & BYTE_MASK) << 16 | (second & BYTE_MASK) << 8 | third & BYTE_MASK;
+        output.append(ALPHABET[bits >>> 18 & SIXTET_MASK])
+                .append(ALPHABET[bits >>> 12 & SIXTET_MASK])
+                .append(ALPHABET[bits >>> 6 & SIXTET_MASK])
+                .append(ALPHABET[bits & SIXTET_MASK]);
+    }
+
+    private void flushGroup() {
+        final char first = pending[0];
+        final char second = pending[1];
+        final char third = pending[2];
+        appendSixtets(first, first >>> 8, second);
+        appendSixtets(second >>> 8, third, third >>> 8);
+        pendingCount = 0;
+    }
+
+    private void encodeChar(final char chr) {
+        pending[pendingCount++] = chr;
+        if (pendingCount == CHARS_PER_GROUP) {
+            flushGroup();
+        }
+    }
+
+    private void appendUnpaired(final char chr) {
+        if (Character.isHighSurrogate(chr)) {
+            highSurrogate = chr;
+        }
+        else {
+            encodeChar(Character.isLowSurrogate(chr) ? REPLACEMENT_CHAR : chr);
+        }
+    }
+
+    /**
+     * Appends a character to encode. An unpaired surrogate is encoded as U+FFFD like String.getBytes does.
+     * @param chr The character to encode.
+     * @return The same instance of the encoder.
+     */
+    public Utf16LeBase64Encoder append(final char chr) {
+        if (NO_CHAR == highSurrogate) {
+            appendUnpaired(chr);
+        }
+        else {
+            final char high = highSurrogate;
+            highSurrogate = NO_CHAR;
+            if (Character.isLowSurrogate(chr)) {
+                encodeChar(high);
+                encodeChar(chr);
+            }
+            else {
+                encodeChar(REPLACEMENT_CHAR);
+                appendUnpaired(chr);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the text to encode.
+     * @param text The text to encode.
+     * @return The same instance of the encoder.
+     */
+    public Utf16LeBase64Encoder append(final CharSequence text) {
+        final int length = text.length();
+        for (int idx = 0; idx < length; idx++) {
+            append(text.charAt(idx));
+        }
+        return this;
+    }
+
+    /**
+     * Encodes the remaining characters with the padding.
+     * @return The output of the encoder.
+     */
+    public StringBuilder finish() {
+        if (NO_CHAR != highSurrogate) {
+            highSurrogate = NO_CHAR;
+            encodeChar(REPLACEMENT_CHAR);
+        }
+
+        if (pendingCount > 0) {
+            final char first = pending[0];
+            if (pendingCount == 1) {
+                appendSixtets(first, first >>> 8, 0);
+                output.setLength(output.length() - 1);
+                output.append(PAD);
+            }
+            else {
+                final char second = pending[1];
+                appendSixtets(first, first >>> 8, second);
+                appendSixtets(second >>> 8, 0, 0);
+                output.setLength(output.length() - 2);
+                output.append(PAD).append(PAD);
+            }
+            pendingCount = 0;
+        }
+        return output;
+    }
+}
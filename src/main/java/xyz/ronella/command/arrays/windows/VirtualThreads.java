@@ -0,0 +1,35 @@
+package xyz.ronella.command.arrays.windows;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of the running JDK without requiring it at compile time.
+ *
+ * @author Ron Webb
+ * @since 1.1.0
+ */
+final class VirtualThreads {
+
+    private static final String FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * @return The executor when the running JDK supports virtual threads. Otherwise empty.
+     */
+    static Optional<ExecutorService> newPerTaskExecutor() {
+        Optional<ExecutorService> output;
+        try {
+            final var factory = Executors.class.getMethod(FACTORY_METHOD);
+            output = Optional.of((ExecutorService) factory.invoke(null));
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException exception) {
+            output = Optional.empty();
+        }
+        return output;
+    }
+}
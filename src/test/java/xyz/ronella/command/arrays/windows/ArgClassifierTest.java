@@ -0,0 +1,69 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArgClassifierTest {
+
+    private static final String LITERAL_MATCHER = "^[Ll][Ii][Tt][Ee][Rr][Aa][Ll]:(.*)";
+    private static final String RAW_MATCHER = "^[\"'&{].*";
+
+    private static final List<String> SAMPLES = List.of("", "literal:", "LiTeRaL:value", "literal:a\nb", "literal:a\rb",
+            "literal:a\u0085b", "literal:a\u2028b", "literal:a\u2029b", "literal value", "Literal", "\u0130iteral:x",
+            "\"quoted\"", "'single'", "&{script}", "{\nblock\n}", "{a\u2028b}", "\nliteral:x", "plain", "-Command");
+
+    private static String singleLine(final String text) {
+        return text.replaceAll("[\n\r]", " ");
+    }
+
+    @Test
+    public void isLiteralMatchesRegex() {
+        SAMPLES.forEach(___sample -> assertEquals(___sample.matches(LITERAL_MATCHER),
+                ArgClassifier.isLiteral(___sample), ___sample));
+    }
+
+    @Test
+    public void isSingleLineLiteralMatchesRegex() {
+        SAMPLES.forEach(___sample -> assertEquals(singleLine(___sample).matches(LITERAL_MATCHER),
+                ArgClassifier.isSingleLineLiteral(___sample), ___sample));
+    }
+
+    @Test
+    public void isRawMatchesRegex() {
+        SAMPLES.forEach(___sample -> assertEquals(___sample.matches(RAW_MATCHER),
+                ArgClassifier.isRaw(___sample), ___sample));
+    }
+
+    @Test
+    public void isSingleLineRawMatchesRegex() {
+        SAMPLES.forEach(___sample -> assertEquals(singleLine(___sample).matches(RAW_MATCHER),
+                ArgClassifier.isSingleLineRaw(___sample), ___sample));
+    }
+
+    @Test
+    public void stripLiteralMultiLine() {
+        assertEquals("literal:a\nb", ArgClassifier.stripLiteral("literal:a\nb"));
+    }
+
+    @Test
+    public void classify() {
+        assertEquals(ArgClassifier.ArgType.RAW, ArgClassifier.classify("{\nblock\n}"));
+        assertEquals(ArgClassifier.ArgType.LITERAL, ArgClassifier.classify("literal:-Command"));
+        assertEquals(ArgClassifier.ArgType.PLAIN, ArgClassifier.classify("Hello world"));
+    }
+
+    @Test
+    public void isFlag() {
+        assertTrue(ArgClassifier.isFlag("-EncodedCommand", "-EncodedCommand"));
+        assertTrue(ArgClassifier.isFlag("\"-encodedcommand\"", "-EncodedCommand"));
+        assertTrue(ArgClassifier.isFlag("\"\"\"-EncodedCommand\"\"\"", "-EncodedCommand"));
+        assertFalse(ArgClassifier.isFlag("\"-EncodedCommand'", "-EncodedCommand"));
+        assertFalse(ArgClassifier.isFlag("-EncodedCommands", "-EncodedCommand"));
+        assertFalse(ArgClassifier.isFlag(null, "-EncodedCommand"));
+    }
+}
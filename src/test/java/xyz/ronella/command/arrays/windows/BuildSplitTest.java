@@ -0,0 +1,139 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BuildSplitTest {
+
+    private static final int MAX_LENGTH = 2_000;
+
+    private static List<String> paths(final int count) {
+        return IntStream.range(0, count)
+                .mapToObj(___idx -> ___idx % 3 == 0 ? String.format("C:\\My Files\\file %d.txt", ___idx)
+                        : String.format("C:\\Temp\\file-%d.txt", ___idx))
+                .collect(Collectors.toList());
+    }
+
+    private static int commandLineLength(final PowerShell powerShell) {
+        return powerShell.asList().stream().mapToInt(___arg -> ___arg.length() + 3).sum();
+    }
+
+    private static PowerShell.PowerShellBuilder baseBuilder() {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Remove-Item")
+                .addArg("literal:-Force")
+                .addZArg("literal:-Verbose")
+                .setMaxCommandLineLength(MAX_LENGTH);
+    }
+
+    private static void assertSplit(final PowerShell.PowerShellBuilder builder, final List<String> args) {
+        final var commands = builder.buildSplit(args).collect(Collectors.toList());
+        assertTrue(commands.size() > 1);
+
+        final var consumed = new ArrayList<String>();
+        int start = 0;
+        for (final var command : commands) {
+            assertTrue(commandLineLength(command) <= MAX_LENGTH);
+            int end = start;
+            while (end < args.size()
+                    && commandLineLength(builder.copy().addArgs(args.subList(start, end + 1)).build()) <= MAX_LENGTH) {
+                end++;
+            }
+            final var chunk = args.subList(start, end);
+            assertArrayEquals(builder.copy().addArgs(chunk).build().getCommand(), command.getCommand());
+            consumed.addAll(chunk);
+            start = end;
+        }
+        assertEquals(args, consumed);
+    }
+
+    @Test
+    public void nonAdminSplit() {
+        assertSplit(baseBuilder(), paths(300));
+    }
+
+    @Test
+    public void adminModeSplit() {
+        assertSplit(baseBuilder().setAdminMode(false).addAdminModeHeader("$ErrorActionPreference = 'Stop'"),
+                paths(200));
+    }
+
+    @Test
+    public void adminModeWithoutArgsSplit() {
+        assertSplit(PowerShell.getBuilder().setCommand("Remove-Item").setAdminMode(false)
+                .setMaxCommandLineLength(MAX_LENGTH), paths(200));
+    }
+
+    @Test
+    public void lazy() {
+        final var counter = new AtomicInteger();
+        final var first = baseBuilder()
+                .buildSplit(IntStream.range(0, 1_000_000).peek(___idx -> counter.incrementAndGet())
+                        .mapToObj(___idx -> String.format("file-%d.txt", ___idx)))
+                .findFirst();
+
+        assertTrue(first.isPresent());
+        assertTrue(counter.get() < 1_000);
+    }
+
+    @Test
+    public void closesStream() {
+        final var isClosed = new AtomicBoolean();
+        try (var commands = baseBuilder().buildSplit(paths(10).stream().onClose(() -> isClosed.set(true)))) {
+            assertEquals(1, commands.count());
+        }
+        assertTrue(isClosed.get());
+    }
+
+    @Test
+    public void argumentTooLong() {
+        final var stream = baseBuilder().buildSplit(List.of("x".repeat(MAX_LENGTH)));
+        assertThrows(IllegalArgumentException.class, () -> stream.collect(Collectors.toList()));
+    }
+
+    @Test
+    public void emptyArgs() {
+        assertEquals(0, baseBuilder().buildSplit(List.of()).count());
+    }
+
+    @Test
+    public void customAdminLogic() {
+        final var builder = baseBuilder().setAdminMode(true).setAdminModeLogic(
+                (___isAdmin, ___headers, ___args, ___command, ___inputs) -> ___command);
+        assertThrows(IllegalStateException.class, () -> builder.buildSplit(List.of("a")));
+    }
+
+    @Test
+    public void slots() {
+        final var builder = baseBuilder().addArgSlot("name");
+        assertThrows(IllegalStateException.class, () -> builder.buildSplit(List.of("a")));
+    }
+
+    @Test
+    public void measureWithoutScriptFiles() throws Exception {
+        var dir = Files.createTempDirectory("build-split");
+        var builder = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .setMaxCommandLineLength(MAX_LENGTH)
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg("Write-Output 'Hello World'\n".repeat(100));
+        var stream = builder.buildSplit(paths(10));
+
+        assertEquals(0, Files.list(dir).count());
+        assertThrows(IllegalArgumentException.class, () -> stream.collect(Collectors.toList()));
+        assertEquals(0, Files.list(dir).count());
+    }
+}
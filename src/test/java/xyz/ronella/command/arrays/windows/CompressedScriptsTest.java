@@ -0,0 +1,96 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedScriptsTest {
+
+    private static String largeScript() {
+        final var script = new StringBuilder();
+        for (int idx = 0; idx < 500; idx++) {
+            script.append(String.format("Write-Output \"Line %d \u00E9\"%n", idx));
+        }
+        return script.toString();
+    }
+
+    private static String lastArg(final PowerShell powerShell) {
+        final var command = powerShell.getCommand();
+        return command[command.length - 1];
+    }
+
+    @Test
+    public void encodedArgRoundTrip() {
+        final var script = largeScript();
+        final var ps = PowerShell.getBuilder()
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg(script)
+                .setCompressionThreshold(1024)
+                .build();
+
+        final var encoded = lastArg(ps);
+        assertTrue(encoded.length() * 5 < PowerShell.encodeText(script).length());
+        assertEquals(script, CompressedScripts.expand(encoded));
+    }
+
+    @Test
+    public void adminModeRoundTrip() {
+        final var header = largeScript();
+        final var ps = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeader(header)
+                .setAdminMode(false)
+                .setCompressionThreshold(1024)
+                .build();
+
+        assertEquals(header + "\nExit (Start-Process \"Get-Date\" -Wait -PassThru).ExitCode",
+                CompressedScripts.expand(lastArg(ps)));
+    }
+
+    @Test
+    public void belowThresholdIsPlain() {
+        final var builder = PowerShell.getBuilder()
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg("Get-Date");
+
+        final var plain = builder.build();
+        final var compressed = builder.copy().setCompressionThreshold(1024).build();
+        assertArrayEquals(plain.getCommand(), compressed.getCommand());
+    }
+
+    @Test
+    public void incompressibleIsPlain() {
+        final var script = "Get-Date; Get-Item .";
+        assertEquals(script, CompressedScripts.compress(script).toString());
+    }
+
+    @Test
+    public void templateMatchesBuild() {
+        final var builder = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeaders(List.of(largeScript()))
+                .setAdminMode(false)
+                .setCompressionThreshold(1024);
+
+        final var plain = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeaders(List.of(largeScript()))
+                .setAdminMode(false)
+                .build();
+
+        assertArrayEquals(builder.build().getCommand(), builder.compile().bind(Map.of()).getCommand());
+        assertNotEquals(lastArg(plain), lastArg(builder.build()));
+    }
+
+    @Test
+    public void negativeThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> PowerShell.getBuilder().setCompressionThreshold(-1));
+    }
+}
@@ -0,0 +1,92 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeferredArgsTest {
+
+    @Test
+    public void sameAsEagerArgs() {
+        var eager = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .addArg("a.txt")
+                .addArgs(List.of("b.txt", "literal:-Force"))
+                .addZArg("c.txt")
+                .addZArgs(List.of("d.txt"))
+                .addEncodedArg("Get-Date")
+                .build();
+
+        var deferred = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .addArg(() -> "a.txt")
+                .addArgs(() -> List.of("b.txt", "literal:-Force"))
+                .addZArg(() -> "c.txt")
+                .addZArgs(() -> List.of("d.txt"))
+                .addEncodedArg(() -> "Get-Date")
+                .build();
+
+        assertArrayEquals(eager.getCommand(), deferred.getCommand());
+    }
+
+    @Test
+    public void sameAsEagerHeaders() {
+        var eager = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeader("$a = 1")
+                .addAdminModeHeaders(List.of("$b = 2", "$c = 3"))
+                .setAdminMode(true)
+                .build();
+
+        var deferred = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeader(() -> "$a = 1")
+                .addAdminModeHeaders(() -> List.of("$b = 2", "$c = 3"))
+                .setAdminMode(true)
+                .build();
+
+        assertArrayEquals(eager.getCommand(), deferred.getCommand());
+    }
+
+    @Test
+    public void evaluatedOnBuild() {
+        var count = new AtomicInteger();
+        var builder = PowerShell.getBuilder()
+                .setCommand("Get-Item")
+                .addArg(() -> "file" + count.incrementAndGet());
+
+        assertEquals(0, count.get());
+        assertEquals("\"\"\"file1\"\"\"", builder.build().asList().get(2));
+        assertEquals("\"\"\"file2\"\"\"", builder.build().asList().get(2));
+    }
+
+    @Test
+    public void headersOnlyInAdminMode() {
+        var count = new AtomicInteger();
+        var builder = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeader(() -> "$a = " + count.incrementAndGet());
+
+        builder.build();
+        assertEquals(0, count.get());
+
+        builder.setAdminMode(false).build();
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void toBuilderEvaluatesAgain() {
+        var count = new AtomicInteger();
+        var ps = PowerShell.getBuilder()
+                .addArg(() -> "file" + count.incrementAndGet())
+                .build();
+
+        ps.toBuilder().build();
+
+        assertEquals(2, count.get());
+    }
+}
@@ -0,0 +1,45 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class EncodedHeaderCacheTest {
+
+    private static final List<String> HEADERS = List.of("Import-Module Storage", "$ErrorActionPreference = 'Stop'");
+
+    @AfterEach
+    public void reset() {
+        EncodedHeaderCache.invalidateAll();
+    }
+
+    private static String lastArg(final PowerShell powerShell) {
+        final var command = powerShell.getCommand();
+        return command[command.length - 1];
+    }
+
+    @Test
+    public void sameHeadersReused() {
+        assertSame(EncodedHeaderCache.getOrEncode(HEADERS), EncodedHeaderCache.getOrEncode(new ArrayList<>(HEADERS)));
+    }
+
+    @Test
+    public void suffixAppended() {
+        List.of("Get-Date", "Get-Item", "Copy-Item").forEach(___command -> {
+            final var ps = PowerShell.getBuilder()
+                    .setCommand(___command)
+                    .addAdminModeHeaders(HEADERS)
+                    .setAdminMode(false)
+                    .build();
+
+            final var expected = PowerShell.encodeText(String.join("\n", HEADERS) + "\n"
+                    + "Exit (Start-Process \"" + ___command + "\" -Wait -PassThru).ExitCode");
+            assertEquals(expected, lastArg(ps), ___command);
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PowerShellCacheTest {
+
+    private static PowerShell.PowerShellBuilder adminBuilder(final String arg) {
+        return PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Where")
+                .addArg(arg)
+                .setAdminMode(true);
+    }
+
+    @Test
+    public void sameStateIsHit() {
+        var cache = PowerShellCache.getBuilder().build();
+
+        var first = cache.getOrBuild(adminBuilder("Where"));
+        var second = cache.getOrBuild(adminBuilder("Where"));
+
+        assertSame(first, second);
+        assertArrayEquals(adminBuilder("Where").build().getCommand(), second.getCommand());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void differentStateIsMiss() {
+        var cache = PowerShellCache.getBuilder().build();
+
+        var first = cache.getOrBuild(adminBuilder("Where"));
+        var second = cache.getOrBuild(adminBuilder("What"));
+
+        assertNotSame(first, second);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void encodedArgIsNotNormalArg() {
+        var cache = PowerShellCache.getBuilder().build();
+
+        cache.getOrBuild(PowerShell.getBuilder().addEncodedArg("echo"));
+        cache.getOrBuild(PowerShell.getBuilder().addArg("ZQBjAGgAbwA="));
+
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void deferredIsNotCached() {
+        var cache = PowerShellCache.getBuilder().build();
+        var counter = new AtomicLong();
+        var builder = PowerShell.getBuilder().addArg(() -> String.valueOf(counter.incrementAndGet()));
+
+        assertEquals(List.of("powershell.exe", "\"\"\"1\"\"\""), cache.getOrBuild(builder).asList());
+        assertEquals(List.of("powershell.exe", "\"\"\"2\"\"\""), cache.getOrBuild(builder).asList());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        var cache = PowerShellCache.getBuilder().setMaxSize(2).build();
+
+        cache.getOrBuild(adminBuilder("A"));
+        cache.getOrBuild(adminBuilder("B"));
+        cache.getOrBuild(adminBuilder("A"));
+        cache.getOrBuild(adminBuilder("C"));
+        cache.getOrBuild(adminBuilder("A"));
+        cache.getOrBuild(adminBuilder("B"));
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void expiredIsMiss() {
+        var now = new AtomicLong();
+        var cache = PowerShellCache.getBuilder()
+                .setTimeToLive(Duration.ofSeconds(1))
+                .setTicker(now::get)
+                .build();
+
+        cache.getOrBuild(adminBuilder("Where"));
+        now.set(Duration.ofMillis(999).toNanos());
+        cache.getOrBuild(adminBuilder("Where"));
+        now.set(Duration.ofSeconds(1).toNanos());
+        cache.getOrBuild(adminBuilder("Where"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void adminLogicIdentity() {
+        var cache = PowerShellCache.getBuilder().build();
+        IPSAdminModeLogic logic = (___isAdminMode, ___header, ___psArgs, ___command, ___args) -> "logic";
+
+        cache.getOrBuild(adminBuilder("Where").setAdminModeLogic(logic));
+        cache.getOrBuild(adminBuilder("Where").setAdminModeLogic(logic));
+        cache.getOrBuild(adminBuilder("Where"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+}
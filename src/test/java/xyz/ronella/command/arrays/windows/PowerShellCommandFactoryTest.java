@@ -0,0 +1,121 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PowerShellCommandFactoryTest {
+
+    @Test
+    public void createNonAdminMode() {
+        var expected = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArg("literal:-Force")
+                .addArg("C:\\source.txt")
+                .addZArg("literal:-Verbose")
+                .addZArg("C:\\target.txt")
+                .build();
+
+        var factory = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArg("literal:-Force")
+                .addZArg("literal:-Verbose")
+                .toFactory();
+
+        assertArrayEquals(expected.getCommand(), factory.getCommand(List.of("C:\\source.txt"), List.of("C:\\target.txt")));
+    }
+
+    @Test
+    public void createAdminMode() {
+        var expected = PowerShell.getBuilder()
+                .setCommand("Where")
+                .addArg("Where")
+                .setAdminMode(true)
+                .build();
+
+        var factory = PowerShell.getBuilder()
+                .setCommand("Where")
+                .setAdminMode(true)
+                .toFactory();
+
+        assertArrayEquals(expected.getCommand(), factory.getCommand(List.of("Where")));
+    }
+
+    @Test
+    public void createConcurrently() throws Exception {
+        var factory = PowerShell.getBuilder()
+                .setCommand("Where")
+                .setAdminMode(true)
+                .toFactory();
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Boolean>>();
+            for (int idx = 0; idx < 64; idx++) {
+                final var arg = "Arg" + idx;
+                tasks.add(() -> {
+                    var expected = PowerShell.getBuilder().setCommand("Where").addArg(arg).setAdminMode(true).build();
+                    assertArrayEquals(expected.getCommand(), factory.getCommand(List.of(arg)));
+                    return true;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void factoryWithSlot() {
+        var builder = PowerShell.template().addArgSlot("path");
+
+        assertThrows(IllegalStateException.class, builder::toFactory);
+    }
+
+    @Test
+    public void getCommandsInOrder() {
+        var base = PowerShell.getBuilder()
+                .setCommand("Where")
+                .setAdminMode(true);
+        var argSets = new ArrayList<List<String>>();
+        for (int idx = 0; idx < 1000; idx++) {
+            argSets.add(List.of("Arg" + idx));
+        }
+
+        var sequential = PowerShell.buildAll(base, argSets);
+        var parallel = PowerShell.buildAll(base, argSets, ForkJoinPool.commonPool());
+
+        for (int idx = 0; idx < argSets.size(); idx++) {
+            var expected = base.copy().addArgs(argSets.get(idx)).build().getCommand();
+            assertArrayEquals(expected, sequential.get(idx));
+            assertArrayEquals(expected, parallel.get(idx));
+        }
+    }
+
+    @Test
+    public void getCommandsStream() {
+        var factory = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .toFactory();
+
+        var commands = factory.getCommands(Stream.of(List.of("a.txt"), List.of("b.txt")))
+                .map(___command -> String.join(" ", ___command))
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("powershell.exe \"Copy-Item\" \"\"\"a.txt\"\"\"", "powershell.exe \"Copy-Item\" \"\"\"b.txt\"\"\""), commands);
+    }
+}
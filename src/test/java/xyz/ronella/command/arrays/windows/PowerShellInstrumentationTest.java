@@ -0,0 +1,123 @@
+package xyz.ronella.command.arrays.windows;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PowerShellInstrumentationTest {
+
+    private static final class Recorder implements IPSInstrumentation {
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public synchronized void built(final BuildPath path, final long durationNanos, final int argCount,
+                                       final int payloadSize) {
+            calls.add(String.format("built:%s:%d:%d", path, argCount, payloadSize));
+        }
+
+        @Override
+        public synchronized void cacheAccessed(final String cacheName, final boolean isHit) {
+            calls.add(String.format("cache:%s:%s", cacheName, isHit));
+        }
+
+        @Override
+        public synchronized void elevationChecked(final boolean isElevated, final long durationNanos) {
+            calls.add(String.format("elevation:%s", isElevated));
+        }
+    }
+
+    @AfterEach
+    public void reset() {
+        PowerShellInstrumentation.setInstrumentation(null);
+        RunAsChecker.setProbe(null);
+    }
+
+    @Test
+    public void defaultIsNoOp() {
+        assertSame(PowerShellInstrumentation.NO_OP, PowerShellInstrumentation.getInstrumentation());
+        assertFalse(PowerShellInstrumentation.isEnabled());
+    }
+
+    @Test
+    public void nonAdminBuild() {
+        final var recorder = new Recorder();
+        PowerShellInstrumentation.setInstrumentation(recorder);
+        final var command = PowerShell.getBuilder()
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg("Get-Date")
+                .build();
+
+        final var encoded = command.getCommand()[command.getCommand().length - 1];
+        assertEquals(List.of(String.format("built:NON_ADMIN:%d:%d", command.getCommand().length, encoded.length())),
+                recorder.calls);
+    }
+
+    @Test
+    public void adminModeBuild() {
+        final var recorder = new Recorder();
+        PowerShellInstrumentation.setInstrumentation(recorder);
+        PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .setAdminMode(false)
+                .build();
+
+        assertTrue(recorder.calls.get(0).startsWith("built:ADMIN_MODE_NO_RUNAS:"));
+    }
+
+    @Test
+    public void cacheAccess() {
+        final var recorder = new Recorder();
+        PowerShellInstrumentation.setInstrumentation(recorder);
+        final var cache = PowerShellCache.getBuilder().build();
+        final var builder = PowerShell.getBuilder().setCommand("Get-Date");
+        cache.getOrBuild(builder);
+        cache.getOrBuild(builder);
+
+        assertEquals(List.of("cache:PowerShellCache:false", "cache:PowerShellCache:true"),
+                recorder.calls.stream().filter(___call -> ___call.startsWith("cache:")).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void elevationChecked() {
+        final var recorder = new Recorder();
+        PowerShellInstrumentation.setInstrumentation(recorder);
+        RunAsChecker.setProbe(() -> true);
+        RunAsChecker.isElevatedMode();
+        RunAsChecker.isElevatedMode();
+
+        assertEquals(List.of("elevation:true"), recorder.calls);
+    }
+
+    @Test
+    public void jfrEvents() throws IOException {
+        PowerShellInstrumentation.setInstrumentation(new JfrInstrumentation());
+        final var file = Files.createTempFile("instrumentation", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("xyz.ronella.command.arrays.Build");
+            recording.start();
+            PowerShell.getBuilder().setCommand("Get-Date").build();
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.size());
+            assertEquals("NON_ADMIN", events.get(0).getString("path"));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisabledOnOs(OS.WINDOWS)
+public class PowerShellLauncherTest {
+
+    private static PowerShell shell(final String script) {
+        return PowerShell.getBuilder()
+                .suppressProgramName(true)
+                .addPArgs(List.of("sh", "-c", script))
+                .build();
+    }
+
+    @Test
+    public void toProcessBuilder() {
+        assertEquals(List.of("sh", "-c", "exit 0"), PowerShellLauncher.toProcessBuilder(shell("exit 0")).command());
+    }
+
+    @Test
+    public void run() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().build()) {
+            var result = launcher.run(shell("echo out; echo err 1>&2; exit 3"));
+
+            assertEquals(3, result.getExitCode());
+            assertEquals("out\n", result.getOutput());
+            assertEquals("err\n", result.getError());
+        }
+    }
+
+    @Test
+    public void runLargeOutputWithSmallBuffer() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setBufferSize(7).build()) {
+            var result = launcher.run(shell("i=0; while [ $i -lt 2000 ]; do echo line$i; echo err$i 1>&2; i=$((i+1)); done"));
+
+            assertEquals(2000, result.getOutput().split("\n").length);
+            assertEquals("line1999", result.getOutput().split("\n")[1999]);
+            assertEquals(2000, result.getError().split("\n").length);
+        }
+    }
+
+    @Test
+    public void cancelDestroysProcess() throws Exception {
+        var pidFile = Files.createTempFile("launcher", ".pid");
+        try (var launcher = PowerShellLauncher.getBuilder().build()) {
+            var future = launcher.launch(shell("echo $$ > " + pidFile + "; exec sleep 30"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (Files.readString(pidFile).isBlank() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            var process = ProcessHandle.of(Long.parseLong(Files.readString(pidFile).trim())).orElseThrow();
+
+            future.cancel(true);
+            assertTrue(process.onExit().thenApply(___process -> true)
+                    .completeOnTimeout(false, 5, TimeUnit.SECONDS)
+                    .get());
+        }
+    }
+
+    @Test
+    public void launchMany() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setMaxConcurrent(2).setQueueCapacity(1).build()) {
+            var futures = new ArrayList<Future<LaunchResult>>();
+            for (int idx = 0; idx < 10; idx++) {
+                futures.add(launcher.launch(shell("echo " + idx)));
+            }
+
+            for (int idx = 0; idx < 10; idx++) {
+                assertEquals(idx + "\n", futures.get(idx).get().getOutput());
+            }
+        }
+    }
+
+    @Test
+    public void launchUnknownProgram() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().build()) {
+            var ps = PowerShell.getBuilder()
+                    .suppressProgramName(true)
+                    .addPArg("unknown-program-of-command-arrays")
+                    .build();
+
+            assertThrows(ExecutionException.class, () -> launcher.launch(ps).get());
+        }
+    }
+
+    @Test
+    public void launchAsyncMany() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setMaxConcurrent(2).build()) {
+            var futures = new ArrayList<CompletableFuture<LaunchResult>>();
+            for (int idx = 0; idx < 10; idx++) {
+                futures.add(launcher.launchAsync(shell("echo " + idx)));
+            }
+
+            for (int idx = 0; idx < 10; idx++) {
+                assertEquals(idx + "\n", futures.get(idx).get().getOutput());
+            }
+        }
+    }
+
+    @Test
+    public void launchAsyncPlatformThreads() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setUseVirtualThreads(false).build()) {
+            assertFalse(launcher.isUsingVirtualThreads());
+            assertEquals(5, launcher.launchAsync(shell("exit 5")).get().getExitCode());
+        }
+    }
+
+    @Test
+    public void launchAsyncPlatformThreadsBounded() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setUseVirtualThreads(false).setMaxConcurrent(1)
+                .setQueueCapacity(1).build()) {
+            var first = launcher.launchAsync(shell("sleep 1; exit 1"));
+            var second = launcher.launchAsync(shell("exit 2"));
+            var rejected = launcher.launchAsync(shell("exit 3"));
+
+            var exception = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+            assertEquals(1, first.get().getExitCode());
+            assertEquals(2, second.get().getExitCode());
+            assertEquals(4, launcher.launchAsync(shell("exit 4")).get().getExitCode());
+        }
+    }
+
+    @Test
+    public void launchAsyncBounded() throws Exception {
+        try (var launcher = PowerShellLauncher.getBuilder().setMaxConcurrent(1).setQueueCapacity(1).build()) {
+            var first = launcher.launchAsync(shell("sleep 1; exit 1"));
+            var second = launcher.launchAsync(shell("exit 2"));
+            var rejected = launcher.launchAsync(shell("exit 3"));
+
+            var exception = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+            assertEquals(1, first.get().getExitCode());
+            assertEquals(2, second.get().getExitCode());
+        }
+    }
+
+    @Test
+    public void launchAsyncUnknownProgram() {
+        try (var launcher = PowerShellLauncher.getBuilder().build()) {
+            var ps = PowerShell.getBuilder()
+                    .suppressProgramName(true)
+                    .addPArg("unknown-program-of-command-arrays")
+                    .build();
+
+            assertThrows(ExecutionException.class, () -> launcher.launchAsync(ps).get());
+        }
+    }
+
+    @Test
+    public void invalidMaxConcurrent() {
+        assertThrows(IllegalArgumentException.class, () -> PowerShellLauncher.getBuilder().setMaxConcurrent(0));
+    }
+}
@@ -0,0 +1,105 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PowerShellMinifierTest {
+
+    private static final PowerShellMinifier MINIFIER = new PowerShellMinifier();
+
+    private static String lastArg(final PowerShell powerShell) {
+        final var command = powerShell.getCommand();
+        return command[command.length - 1];
+    }
+
+    @Test
+    public void commentsAndWhitespace() {
+        final var script = "#requires -Version 5\r\n"
+                + "# Copies the files\n"
+                + "\n"
+                + "function Copy-All {\n"
+                + "    param($Path)   # the source\n"
+                + "    <# block\n"
+                + "       comment #>\n"
+                + "    Get-ChildItem    $Path |\n"
+                + "        Copy-Item -Destination C:\\Temp\t\n"
+                + "}\n";
+
+        assertEquals("#requires -Version 5\n"
+                + "function Copy-All {\n"
+                + "param($Path)\n"
+                + "Get-ChildItem $Path |\n"
+                + "Copy-Item -Destination C:\\Temp\n"
+                + "}", MINIFIER.transform(script));
+    }
+
+    @Test
+    public void stringsUntouched() {
+        final var script = "  Write-Output 'a  # not a comment ''  '   \"b  `\"  <# c #>\"  # gone";
+        assertEquals("Write-Output 'a  # not a comment ''  ' \"b  `\"  <# c #>\"", MINIFIER.transform(script));
+    }
+
+    @Test
+    public void hereStringsUntouched() {
+        final var script = "$a = @'\n  # kept\n\n  '@ not the end\n'@\n$b = @\"\n  <# kept #>\n\"@   # gone\n";
+        assertEquals("$a = @'\n  # kept\n\n  '@ not the end\n'@\n$b = @\"\n  <# kept #>\n\"@",
+                MINIFIER.transform(script));
+    }
+
+    @Test
+    public void lineContinuation() {
+        assertEquals("Get-Item `\n -Path . ` \nGet-Date",
+                MINIFIER.transform("Get-Item `\n    -Path . `  # escaped space\n\nGet-Date"));
+    }
+
+    @Test
+    public void hashInsideWordUnchanged() {
+        assertEquals("Write-Output   a#b", MINIFIER.transform("Write-Output   a#b"));
+    }
+
+    @Test
+    public void commentAfterPunctuation() {
+        assertEquals("$x = 1;\n$a = 'x    y'", MINIFIER.transform("$x = 1;# don't change\n$a = 'x    y'"));
+        assertEquals("if ($x) {\n}", MINIFIER.transform("if ($x) {# don't\n}"));
+    }
+
+    @Test
+    public void blockCommentWithoutSpace() {
+        assertEquals("Write-Output ab", MINIFIER.transform("Write-Output a<#c#>b"));
+        assertEquals("Write-Output a b", MINIFIER.transform("Write-Output a <#c#> b"));
+    }
+
+    @Test
+    public void unsupportedUnchanged() {
+        List.of("Write-Output 'unterminated  ", "${my var}  # x", "\"$(Get-Date)\"  # x", "cmd --%  a  # b",
+                "Write-Output \u2018a\u2019  # x", "<# unterminated", "@'\nno end\n")
+                .forEach(___script -> assertEquals(___script, MINIFIER.transform(___script), ___script));
+    }
+
+    @Test
+    public void encodedArg() {
+        final var ps = PowerShell.getBuilder()
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg("  Get-Date   # now\n\n")
+                .setScriptTransformer(MINIFIER)
+                .build();
+
+        assertEquals(PowerShell.encodeText("Get-Date"), lastArg(ps));
+    }
+
+    @Test
+    public void adminModeHeaders() {
+        final var ps = PowerShell.getBuilder()
+                .setCommand("Get-Date")
+                .addAdminModeHeaders(List.of("# only a comment", "  $ErrorActionPreference = 'Stop'  # stop"))
+                .setAdminMode(false)
+                .setScriptTransformer(MINIFIER)
+                .build();
+
+        assertEquals(PowerShell.encodeText("$ErrorActionPreference = 'Stop'\n"
+                + "Exit (Start-Process \"Get-Date\" -Wait -PassThru).ExitCode"), lastArg(ps));
+    }
+}
@@ -0,0 +1,92 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PowerShellPayloadCacheTest {
+
+    private static final String SCRIPT = "$ErrorActionPreference = 'Stop'\nExit (Start-Process \"Get-Date\" -Wait -PassThru).ExitCode";
+
+    @Test
+    public void sameAsEncodeText() throws Exception {
+        var dir = Files.createTempDirectory("payload-cache");
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).build()) {
+            assertEquals(PowerShell.encodeText(SCRIPT), cache.getOrEncode(SCRIPT));
+            assertEquals(PowerShell.encodeText(SCRIPT), cache.getOrEncode(new StringBuilder(SCRIPT)));
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void survivesReopen() throws Exception {
+        var dir = Files.createTempDirectory("payload-cache");
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).build()) {
+            cache.getOrEncode(SCRIPT);
+        }
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).setCapacity(1).build()) {
+            assertEquals(PowerShell.encodeText(SCRIPT), cache.getOrEncode(SCRIPT));
+            assertEquals(0, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void damagedEntryIsEncodedAgain() throws Exception {
+        var dir = Files.createTempDirectory("payload-cache");
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).build()) {
+            cache.getOrEncode(SCRIPT);
+        }
+        try (var channel = FileChannel.open(dir.resolve(PowerShellPayloadCache.DATA_FILE), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'#'}), 0);
+        }
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).build()) {
+            assertEquals(PowerShell.encodeText(SCRIPT), cache.getOrEncode(SCRIPT));
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void fullIndex() throws Exception {
+        var dir = Files.createTempDirectory("payload-cache");
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).setCapacity(2).build()) {
+            for (int idx = 0; idx < 5; idx++) {
+                assertEquals(PowerShell.encodeText(SCRIPT + idx), cache.getOrEncode(SCRIPT + idx));
+            }
+            assertEquals(5, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void adminModeWithCache() throws Exception {
+        var dir = Files.createTempDirectory("payload-cache");
+        try (var cache = PowerShellPayloadCache.getBuilder().setDirectory(dir).build()) {
+            var builder = PowerShell.getBuilder()
+                    .addAdminModeHeader("$ErrorActionPreference = 'Stop'")
+                    .setCommand("Copy-Item")
+                    .addArgs(List.of("a.txt", "b.txt"))
+                    .setAdminMode(true);
+            var expected = builder.build().getCommand();
+            builder.setPayloadCache(cache);
+
+            assertArrayEquals(expected, builder.build().getCommand());
+            assertArrayEquals(expected, builder.build().getCommand());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void probeWrapsWithoutOverflow() {
+        assertEquals(Integer.MAX_VALUE % 4096, PowerShellPayloadCache.probeSlot(Integer.MAX_VALUE, 0, 4096));
+        assertEquals((Integer.MAX_VALUE % 4096 + 1) % 4096, PowerShellPayloadCache.probeSlot(Integer.MAX_VALUE, 1, 4096));
+        assertEquals(1, PowerShellPayloadCache.probeSlot(Integer.MAX_VALUE, 1, Integer.MAX_VALUE));
+        assertEquals(2, PowerShellPayloadCache.probeSlot(Integer.MAX_VALUE - 1, 5, 3));
+    }
+}
@@ -0,0 +1,189 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisabledOnOs(OS.WINDOWS)
+public class PowerShellSessionPoolTest {
+
+    private static final IPSSessionFraming SH_FRAMING = (___script, ___marker) ->
+            "( " + ___script + " ); __code=$?; echo; echo \"" + ___marker + "$__code\"; echo 1>&2; echo \""
+            + ___marker + "\" 1>&2";
+
+    private static PowerShellSession.PowerShellSessionBuilder stubSession(final String... pArgs) {
+        return PowerShellSession.getBuilder()
+                .setInterpreter(PowerShell.getBuilder()
+                        .suppressProgramName(true)
+                        .addPArgs(List.of(pArgs))
+                        .build())
+                .setFraming(SH_FRAMING);
+    }
+
+    private static PowerShellSessionPool.PowerShellSessionPoolBuilder stubPool() {
+        return PowerShellSessionPool.getBuilder()
+                .setSessionBuilder(stubSession("sh"))
+                .setMaintenanceInterval(Duration.ZERO);
+    }
+
+    @Test
+    public void startsMinSize() throws Exception {
+        try (var pool = stubPool().setMinSize(2).build()) {
+            assertEquals(2, pool.getSize());
+            assertEquals(2, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void reusesSession() throws Exception {
+        try (var pool = stubPool().build()) {
+            var first = pool.execute("echo $$").getOutput();
+
+            assertEquals(first, pool.execute("echo $$").getOutput());
+            assertEquals(1, pool.getSize());
+        }
+    }
+
+    @Test
+    public void recyclesAfterMaxScripts() throws Exception {
+        try (var pool = stubPool().setMaxScripts(2).build()) {
+            var first = pool.execute("echo $$").getOutput();
+
+            assertEquals(first, pool.execute("echo $$").getOutput());
+            assertNotEquals(first, pool.execute("echo $$").getOutput());
+        }
+    }
+
+    @Test
+    public void neverAboveMaxSize() throws Exception {
+        var executor = Executors.newFixedThreadPool(8);
+        try (var pool = stubPool().setMaxSize(2).build()) {
+            var futures = new ArrayList<Future<LaunchResult>>();
+            for (int idx = 0; idx < 20; idx++) {
+                var script = "echo " + idx;
+                futures.add(executor.submit(() -> pool.execute(script)));
+            }
+
+            for (int idx = 0; idx < 20; idx++) {
+                assertEquals(idx + "\n", futures.get(idx).get().getOutput());
+            }
+            assertEquals(2, pool.getSize());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void evictsIdleAboveMinSize() throws Exception {
+        var now = new AtomicLong();
+        try (var pool = stubPool().setMinSize(1).setIdleTimeout(Duration.ofSeconds(1)).setTicker(now::get).build()) {
+            var executor = Executors.newFixedThreadPool(2);
+            var first = executor.submit(() -> pool.execute("sleep 0.3"));
+            var second = executor.submit(() -> pool.execute("sleep 0.3"));
+            first.get();
+            second.get();
+            executor.shutdown();
+            assertEquals(2, pool.getSize());
+
+            now.addAndGet(Duration.ofSeconds(2).toNanos());
+            pool.maintain();
+
+            assertEquals(1, pool.getSize());
+        }
+    }
+
+    @Test
+    public void evictsUnhealthy() throws Exception {
+        try (var pool = stubPool().setMinSize(1).setHealthCheckScript("test -f /nonexistent-command-arrays").build()) {
+            var first = pool.execute("echo $$").getOutput();
+            pool.maintain();
+
+            assertEquals(1, pool.getSize());
+            assertNotEquals(first, pool.execute("echo $$").getOutput());
+        }
+    }
+
+    @Test
+    public void discardsFailedSession() throws Exception {
+        try (var pool = stubPool().setMinSize(1).build()) {
+            var first = pool.execute("echo $$").getOutput();
+            var noEncoded = PowerShell.getBuilder().setCommand("Get-Date").build();
+
+            assertThrows(IllegalArgumentException.class, () -> pool.execute(noEncoded));
+            assertNotEquals(first, pool.execute("echo $$").getOutput());
+        }
+    }
+
+    @Test
+    public void evictsInterruptedHealthCheck() throws Exception {
+        try (var pool = stubPool().setMinSize(1).setHealthCheckScript("true").build()) {
+            var first = pool.execute("echo $$").getOutput();
+            Thread.currentThread().interrupt();
+            pool.maintain();
+
+            assertTrue(Thread.interrupted());
+            assertNotEquals(first, pool.execute("echo $$").getOutput());
+        }
+    }
+
+    @Test
+    public void recyclesOnMemoryGrowth() throws Exception {
+        try (var pool = stubPool().setMinSize(1).setMaxMemory(100).setMemoryScript("echo 200").build()) {
+            var first = pool.execute("echo $$").getOutput();
+            pool.maintain();
+
+            assertNotEquals(first, pool.execute("echo $$").getOutput());
+        }
+    }
+
+    @Test
+    public void routesRunAsToElevated() throws Exception {
+        var framing = (IPSSessionFraming) (___script, ___marker) -> SH_FRAMING.frame("echo $CA_POOL; echo '"
+                + Base64.getEncoder().encodeToString(___script.getBytes(StandardCharsets.UTF_8)) + "' | base64 -d",
+                ___marker);
+        try (var pool = stubPool()
+                .setSessionBuilder(stubSession("env", "CA_POOL=normal", "sh").setFraming(framing))
+                .setElevatedSessionBuilder(stubSession("env", "CA_POOL=elevated", "sh").setFraming(framing))
+                .build()) {
+            var builder = PowerShell.getBuilder()
+                    .setCommand("Get-Date")
+                    .addAdminModeHeader("Import-Module Foo")
+                    .addArg("now");
+
+            assertEquals("elevated\nImport-Module Foo\n& \"Get-Date\" \"\"\"now\"\"\"",
+                    pool.execute(builder.copy().setAdminMode(true)).getOutput());
+            assertTrue(pool.execute(builder.copy().setAdminMode(false)).getOutput().startsWith("normal\n"));
+            assertEquals(1, pool.getElevatedSize());
+        }
+    }
+
+    @Test
+    public void noElevatedSessions() throws Exception {
+        try (var pool = stubPool().build()) {
+            assertThrows(IllegalStateException.class, () -> pool.executeElevated("echo"));
+        }
+    }
+
+    @Test
+    public void closedPool() throws Exception {
+        var pool = stubPool().build();
+        pool.close();
+
+        assertThrows(IllegalStateException.class, () -> pool.execute("echo"));
+    }
+}
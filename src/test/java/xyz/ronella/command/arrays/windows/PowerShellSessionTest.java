@@ -0,0 +1,183 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisabledOnOs(OS.WINDOWS)
+public class PowerShellSessionTest {
+
+    private static final IPSSessionFraming SH_FRAMING = (___script, ___marker) ->
+            "( " + ___script + " ); __code=$?; echo; echo \"" + ___marker + "$__code\"; echo 1>&2; echo \""
+            + ___marker + "\" 1>&2";
+
+    private static final IPSSessionFraming SH_FILE_FRAMING = (___script, ___marker) ->
+            "__file=$(mktemp); echo '" + Base64.getEncoder().encodeToString(___script.getBytes(StandardCharsets.UTF_8))
+            + "' | base64 -d > \"$__file\"; sh \"$__file\"; __code=$?; rm -f \"$__file\"; echo; echo \""
+            + ___marker + "$__code\"; echo 1>&2; echo \"" + ___marker + "\" 1>&2";
+
+    private static PowerShellSession.PowerShellSessionBuilder stubSession() {
+        return PowerShellSession.getBuilder()
+                .setInterpreter(PowerShell.getBuilder()
+                        .suppressProgramName(true)
+                        .addPArg("sh")
+                        .build())
+                .setFraming(SH_FRAMING);
+    }
+
+    @Test
+    public void executeMany() throws Exception {
+        try (var session = stubSession().setBufferSize(5).build()) {
+            for (int idx = 0; idx < 5; idx++) {
+                var result = session.execute("echo out" + idx + "; echo err" + idx + " 1>&2; exit " + idx);
+
+                assertEquals(idx, result.getExitCode());
+                assertEquals("out" + idx + "\n", result.getOutput());
+                assertEquals("err" + idx + "\n", result.getError());
+            }
+        }
+    }
+
+    @Test
+    public void executeWithoutTrailingNewLine() throws Exception {
+        try (var session = stubSession().build()) {
+            var result = session.execute("printf abc; printf def 1>&2");
+
+            assertEquals("abc", result.getOutput());
+            assertEquals("def", result.getError());
+            assertEquals(0, result.getExitCode());
+        }
+    }
+
+    @Test
+    public void exitKeepsSession() throws Exception {
+        try (var session = stubSession().setFraming(SH_FILE_FRAMING).build()) {
+            for (int idx = 0; idx < 3; idx++) {
+                var result = session.execute("echo out" + idx + "\nexit " + idx + "\necho lost");
+
+                assertEquals(idx, result.getExitCode());
+                assertEquals("out" + idx + "\n", result.getOutput());
+                assertTrue(session.isAlive());
+            }
+        }
+    }
+
+    @Test
+    public void timeoutDestroysSession() throws Exception {
+        var session = stubSession().setTimeout(Duration.ofMillis(200)).build();
+
+        assertThrows(IOException.class, () -> session.execute("sleep 5"));
+        assertFalse(session.isAlive());
+        session.close();
+    }
+
+    @Test
+    public void invalidTimeout() {
+        assertThrows(IllegalArgumentException.class, () -> PowerShellSession.getBuilder().setTimeout(Duration.ZERO));
+    }
+
+    @Test
+    public void executeEncodedCommand() throws Exception {
+        try (var session = stubSession().build()) {
+            var ps = PowerShell.getBuilder()
+                    .addArg("literal:-EncodedCommand")
+                    .addEncodedArg("echo encoded")
+                    .build();
+
+            assertEquals("encoded\n", session.execute(ps).getOutput());
+        }
+    }
+
+    @Test
+    public void executeQuotedEncodedCommand() throws Exception {
+        try (var session = stubSession().build()) {
+            for (var flag : List.of("\"-EncodedCommand\"", "-EncodedCommand")) {
+                var ps = PowerShell.getBuilder()
+                        .addArg(flag)
+                        .addEncodedArg("echo encoded")
+                        .build();
+
+                assertEquals("encoded\n", session.execute(ps).getOutput(), flag);
+            }
+        }
+    }
+
+    @Test
+    public void interruptedDestroysSession() throws Exception {
+        var session = stubSession().build();
+        Thread.currentThread().interrupt();
+
+        assertThrows(InterruptedException.class, () -> session.execute("sleep 5; echo stale"));
+        assertFalse(session.isAlive());
+        assertThrows(IOException.class, () -> session.execute("echo next"));
+        session.close();
+    }
+
+    @Test
+    public void invalidExitCodeDestroysSession() throws Exception {
+        var session = stubSession()
+                .setFraming((___script, ___marker) -> SH_FRAMING.frame(___script, ___marker).replace("$__code", "x"))
+                .build();
+
+        assertThrows(NumberFormatException.class, () -> session.execute("echo stale"));
+        assertFalse(session.isAlive());
+        session.close();
+    }
+
+    @Test
+    public void executeWithoutEncodedCommand() throws Exception {
+        try (var session = stubSession().build()) {
+            var ps = PowerShell.getBuilder().setCommand("Get-Date").build();
+
+            assertThrows(IllegalArgumentException.class, () -> session.execute(ps));
+        }
+    }
+
+    @Test
+    public void sessionEnded() throws Exception {
+        var session = stubSession().setFraming((___script, ___marker) -> "exit 1").build();
+
+        assertThrows(IOException.class, () -> session.execute("echo lost"));
+        session.close();
+        assertFalse(session.isAlive());
+    }
+
+    @Test
+    public void closeEndsInterpreter() throws Exception {
+        var session = stubSession().build();
+
+        assertTrue(session.isAlive());
+        session.close();
+        assertFalse(session.isAlive());
+    }
+
+    @Test
+    public void powerShellFramingHasMarker() {
+        var line = PowerShellSession.POWERSHELL_FRAMING.frame("Get-Date", "MARK");
+
+        assertTrue(line.contains(PowerShell.encodeText("Get-Date")));
+        assertTrue(line.contains("[Console]::Out.WriteLine();[Console]::Out.WriteLine('MARK'+$__caCode)"));
+        assertTrue(line.contains("[Console]::Error.WriteLine();[Console]::Error.WriteLine('MARK')"));
+        assertFalse(line.contains("\n"));
+    }
+
+    @Test
+    public void powerShellFramingRunsScriptFile() {
+        var line = PowerShellSession.POWERSHELL_FRAMING.frame("exit 3", "MARK");
+
+        assertTrue(line.contains("& $__caFile"));
+        assertTrue(line.contains("Remove-Item -LiteralPath $__caFile"));
+        assertFalse(line.contains("[ScriptBlock]::Create"));
+    }
+}
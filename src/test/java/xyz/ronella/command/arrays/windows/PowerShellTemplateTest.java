@@ -0,0 +1,124 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PowerShellTemplateTest {
+
+    @Test
+    public void bindNonAdminMode() {
+        var expected = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArg("C:\\source.txt")
+                .addArg("literal:-Force")
+                .addZArg("C:\\target.txt")
+                .build();
+
+        var template = PowerShell.template()
+                .enableDefaultArgs(true)
+                .setCommand("Copy-Item")
+                .addArgSlot("source")
+                .addArg("literal:-Force")
+                .addZArgSlot("target")
+                .compile();
+
+        assertArrayEquals(expected.getCommand(), template.getCommand(Map.of("source", "C:\\source.txt",
+                "target", "C:\\target.txt")));
+    }
+
+    @Test
+    public void bindAdminMode() {
+        var expected = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Where")
+                .addAdminModeHeader("$ErrorActionPreference = 'Stop'")
+                .addArg("Where")
+                .setAdminMode(true)
+                .build();
+
+        var template = PowerShell.template()
+                .enableDefaultArgs(true)
+                .setCommand("Where")
+                .addAdminModeHeader("$ErrorActionPreference = 'Stop'")
+                .addArgSlot("arg")
+                .setAdminMode(true)
+                .compile();
+
+        assertArrayEquals(expected.getCommand(), template.getCommand(Map.of("arg", "Where")));
+    }
+
+    @Test
+    public void bindAdminModeLogic() {
+        var expected = "powershell.exe Command: -Command Args: Arg1,Arg2";
+
+        var template = PowerShell.template()
+                .setCommand("-Command")
+                .addArg("Arg1")
+                .addArgSlot("arg")
+                .setAdminMode(false)
+                .setAdminModeLogic((___isAdminMode, ___header, ___psArgs, ___command, ___args) -> String.format("Command: %s Args: %s", ___command, String.join(",", ___args)))
+                .compile();
+
+        assertEquals(expected, String.join(" ", template.bind(Map.of("arg", "Arg2")).getCommand()));
+    }
+
+    @Test
+    public void bindMany() {
+        var template = PowerShell.template()
+                .suppressProgramName(true)
+                .addArgSlot("path")
+                .compile();
+
+        assertArrayEquals(new String[] {"\"\"\"a\"\"\""}, template.getCommand(Map.of("path", "a")));
+        assertArrayEquals(new String[] {"'b'"}, template.getCommand(Map.of("path", "'b'")));
+    }
+
+    @Test
+    public void toBuilderOfBound() {
+        var template = PowerShell.template()
+                .setCommand("Copy-Item")
+                .addArgSlot("source")
+                .addZArg("target.txt")
+                .compile();
+
+        var ps = template.bind(Map.of("source", "source.txt"));
+
+        assertArrayEquals(ps.getCommand(), ps.toBuilder().build().getCommand());
+    }
+
+    @Test
+    public void slotNames() {
+        var template = PowerShell.template()
+                .addArgSlot("first")
+                .addZArgSlot("second")
+                .compile();
+
+        assertEquals(Set.of("first", "second"), template.getSlotNames());
+    }
+
+    @Test
+    public void missingSlotValue() {
+        var template = PowerShell.template()
+                .addArgSlot("path")
+                .compile();
+
+        assertThrows(IllegalArgumentException.class, () -> template.bind(Map.of()));
+    }
+
+    @Test
+    public void buildWithSlot() {
+        var builder = PowerShell.template()
+                .addArgs(List.of("Arg"))
+                .addArgSlot("path");
+
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+}
@@ -3,10 +3,12 @@ package xyz.ronella.command.arrays.windows;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.IOException;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class PowerShellTest {
 
@@ -284,6 +286,19 @@ public class PowerShellTest {
         assertEquals(expected, String.join(" ", ps.getCommand()));
     }
 
+    @Test
+    public void normalArgSameAsEncodedArg() {
+        var expected = "powershell.exe \"-EncodedCommand\" ZQBjAGgAbwA= \"\"\"ZQBjAGgAbwA=\"\"\"";
+
+        var ps = PowerShell.getBuilder()
+                .addArg("\"-EncodedCommand\"")
+                .addEncodedArg("echo")
+                .addArg("ZQBjAGgAbwA=")
+                .build();
+
+        assertEquals(expected, String.join(" ", ps.getCommand()));
+    }
+
     @Test
     public void justEncodedArgWhenFalse() {
         var expected = "powershell.exe -NoProfile -InputFormat None -ExecutionPolicy Bypass";
@@ -653,6 +668,61 @@ public class PowerShellTest {
         }
     }
 
+    @Test
+    public void buildTwice() {
+        var builder = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("Where")
+                .addArg("Where")
+                .setAdminMode(true);
+
+        assertArrayEquals(builder.build().getCommand(), builder.build().getCommand());
+    }
+
+    @Test
+    public void copyBuilder() {
+        var expected = "powershell.exe \"Copy-Item\" \"\"\"a.txt\"\"\" \"\"\"b.txt\"\"\"";
+        var base = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .addArg("a.txt");
+
+        var variant = base.copy().addArg("b.txt");
+
+        assertEquals(expected, String.join(" ", variant.build().getCommand()));
+        assertEquals("powershell.exe \"Copy-Item\" \"\"\"a.txt\"\"\"", String.join(" ", base.build().getCommand()));
+    }
+
+    @Test
+    public void toBuilder() {
+        var ps = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .addArg("a.txt")
+                .build();
+
+        var variant = ps.toBuilder().addZArg("b.txt").build();
+
+        assertEquals("powershell.exe \"Copy-Item\" \"\"\"a.txt\"\"\" \"\"\"b.txt\"\"\"", String.join(" ", variant.getCommand()));
+    }
+
+    @Test
+    public void readOnlyViews() throws IOException {
+        var ps = PowerShell.getBuilder()
+                .setCommand("Copy-Item")
+                .addArg("a.txt")
+                .build();
+
+        var expected = String.join(" ", ps.getCommand());
+        var args = new ArrayList<String>();
+        ps.forEachArg(args::add);
+        var sb = new StringBuilder();
+        ps.writeTo(sb);
+
+        assertEquals(Arrays.asList(ps.getCommand()), ps.asList());
+        assertEquals(ps.asList(), args);
+        assertEquals(expected, sb.toString());
+        assertThrows(UnsupportedOperationException.class, () -> ps.asList().set(0, "cmd.exe"));
+    }
+
     @Test
     public void literalLowerCaseGetValue() {
         assertEquals("value", PowerShell.getValue("literal:value"));
@@ -0,0 +1,56 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RunAsCheckerTest {
+
+    @AfterEach
+    public void restoreProbe() {
+        RunAsChecker.setProbe(null);
+    }
+
+    @Test
+    public void probeCalledOnce() {
+        var counter = new AtomicInteger();
+        RunAsChecker.setProbe(() -> counter.incrementAndGet() > 0);
+
+        assertTrue(RunAsChecker.isElevatedMode());
+        assertTrue(RunAsChecker.isElevatedMode());
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void refreshCallsProbeAgain() {
+        var counter = new AtomicInteger();
+        RunAsChecker.setProbe(() -> counter.incrementAndGet() > 1);
+
+        assertFalse(RunAsChecker.isElevatedMode());
+        RunAsChecker.refresh();
+        assertTrue(RunAsChecker.isElevatedMode());
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void adminModePreferNonAdminWithProbe() {
+        var expected = "powershell.exe -NoProfile -InputFormat None -ExecutionPolicy Bypass -EncodedCommand RQB4AGkAdAAgACgAUwB0AGEAcgB0AC0AUAByAG8AYwBlAHMAcwAgACIALQBDAG8AbQBtAGEAbgBkACIAIAAtAFcAYQBpAHQAIAAtAFAAYQBzAHMAVABoAHIAdQAgAC0AYQByAGcAdQBtAGUAbgB0AGwAaQBzAHQAIAAiAFcAcgBpAHQAZQAtAE8AdQB0AHAAdQB0ACIALAAiACIAIgBIAGUAbABsAG8AIAB3AG8AcgBsAGQAIgAiACIAKQAuAEUAeABpAHQAQwBvAGQAZQA=";
+        RunAsChecker.setProbe(() -> true);
+
+        var ps = PowerShell.getBuilder()
+                .enableDefaultArgs(true)
+                .setCommand("-Command")
+                .addArgs(List.of("\"Write-Output\"", "Hello world"))
+                .setAdminMode(true)
+                .setPreferNonAdminMode(true)
+                .build();
+
+        assertEquals(expected, String.join(" ", ps.getCommand()));
+    }
+}
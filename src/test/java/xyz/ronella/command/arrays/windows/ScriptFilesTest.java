@@ -0,0 +1,147 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScriptFilesTest {
+
+    private static final String LONG_SCRIPT = "Write-Output 'Hello World'\n".repeat(2000);
+
+    @Test
+    public void writeOnce() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var first = ScriptFiles.write(dir, "Write-Output 'Hello'");
+        var modified = Files.getLastModifiedTime(first);
+        var second = ScriptFiles.write(dir, new StringBuilder("Write-Output 'Hello'"));
+
+        assertEquals(first, second);
+        assertEquals(modified, Files.getLastModifiedTime(second));
+        assertEquals(1, Files.list(dir).count());
+        assertNotEquals(first, ScriptFiles.write(dir, "Write-Output 'World'"));
+    }
+
+    @Test
+    public void utf8WithBom() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var bytes = Files.readAllBytes(ScriptFiles.write(dir, "Write-Output '\u00e9'"));
+
+        assertArrayEquals(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, Arrays.copyOf(bytes, 3));
+        assertEquals("Write-Output '\u00e9'", new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void adminModeOverflow() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var ps = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .addAdminModeHeader(LONG_SCRIPT)
+                .setCommand("Get-Date")
+                .setAdminMode(true)
+                .build();
+
+        var command = ps.getCommand();
+        var file = command[command.length - 1];
+
+        assertEquals("-File", command[command.length - 2]);
+        assertEquals(List.of("-ExecutionPolicy", "Bypass"), ps.asList().subList(command.length - 4, command.length - 2));
+        assertTrue(file.endsWith(ScriptFiles.EXTENSION));
+        assertTrue(Files.readString(dir.resolve(file)).startsWith("\uFEFF" + LONG_SCRIPT + "\nExit (Start-Process "));
+    }
+
+    @Test
+    public void adminModeUnderLimit() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var builder = PowerShell.getBuilder()
+                .addAdminModeHeader("$ErrorActionPreference = 'Stop'")
+                .setCommand("Get-Date")
+                .setAdminMode(true);
+
+        assertArrayEquals(builder.build().getCommand(), builder.copy().setScriptDirectory(dir).build().getCommand());
+        assertEquals(0, Files.list(dir).count());
+    }
+
+    @Test
+    public void encodedArgOverflow() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var ps = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .setMaxCommandLineLength(100)
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg(LONG_SCRIPT)
+                .build();
+
+        var command = ps.asList();
+
+        assertEquals(List.of("powershell.exe", "-ExecutionPolicy", "Bypass", "-File"), command.subList(0, 4));
+        assertTrue(Files.readString(dir.resolve(command.get(4))).endsWith(LONG_SCRIPT));
+    }
+
+    @Test
+    public void quotedEncodedCommandOverflow() throws Exception {
+        for (var flag : List.of("\"-EncodedCommand\"", "-EncodedCommand", "'-encodedcommand'")) {
+            var dir = Files.createTempDirectory("script-files");
+            var command = PowerShell.getBuilder()
+                    .setScriptDirectory(dir)
+                    .setMaxCommandLineLength(100)
+                    .addArg(flag)
+                    .addEncodedArg(LONG_SCRIPT)
+                    .build()
+                    .asList();
+
+            assertEquals(List.of("powershell.exe", "-ExecutionPolicy", "Bypass", "-File"), command.subList(0, 4), flag);
+            assertTrue(Files.readString(dir.resolve(command.get(4))).endsWith(LONG_SCRIPT), flag);
+        }
+    }
+
+    @Test
+    public void encodedArgOverflowKeepsExecutionPolicy() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var command = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .setMaxCommandLineLength(100)
+                .addPArgs(List.of("-ExecutionPolicy", "RemoteSigned"))
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg(LONG_SCRIPT)
+                .build()
+                .asList();
+
+        assertEquals(List.of("powershell.exe", "-ExecutionPolicy", "RemoteSigned", "-File"), command.subList(0, 4));
+        assertEquals(5, command.size());
+    }
+
+    @Test
+    public void encodedArgOverflowNotLast() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var builder = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .setMaxCommandLineLength(100)
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg(LONG_SCRIPT)
+                .addArg("trailing");
+
+        assertThrows(IllegalStateException.class, builder::build);
+        assertEquals(0, Files.list(dir).count());
+    }
+
+    @Test
+    public void encodedArgUnderLimit() throws Exception {
+        var dir = Files.createTempDirectory("script-files");
+        var ps = PowerShell.getBuilder()
+                .setScriptDirectory(dir)
+                .addArg("literal:-EncodedCommand")
+                .addEncodedArg("Get-Date")
+                .build();
+
+        assertEquals(List.of("powershell.exe", "-EncodedCommand", PowerShell.encodeText("Get-Date")), ps.asList());
+    }
+}
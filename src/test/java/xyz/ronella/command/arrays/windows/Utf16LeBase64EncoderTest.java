@@ -0,0 +1,105 @@
+package xyz.ronella.command.arrays.windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Utf16LeBase64EncoderTest {
+
+    private static final List<String> SAMPLES = List.of("", "a", "ab", "abc", "abcd", "Write-Output \"Hello World\"\n",
+            "\uD83D\uDE00 smile", "\uD83D lone high", "lone low \uDE00", "high at end \uD83D", "\u00E9\u4E2D\uFFFF");
+
+    private static String expected(final String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    public void encodeMatchesBase64() {
+        SAMPLES.forEach(___sample -> assertEquals(expected(___sample), Utf16LeBase64Encoder.encode(___sample), ___sample));
+    }
+
+    @Test
+    public void encodeInPieces() {
+        SAMPLES.forEach(___sample -> {
+            for (int split = 0; split <= ___sample.length(); split++) {
+                var encoder = new Utf16LeBase64Encoder(new StringBuilder());
+                encoder.append(___sample.substring(0, split)).append(___sample.substring(split));
+                assertEquals(expected(___sample), encoder.finish().toString(), ___sample);
+            }
+        });
+    }
+
+    @Test
+    public void resumePrefix() {
+        SAMPLES.forEach(___sample -> {
+            for (int split = 0; split <= ___sample.length(); split++) {
+                var prefix = Utf16LeBase64Encoder.prefix(___sample.substring(0, split));
+                for (int run = 0; run < 2; run++) {
+                    var output = prefix.resume(new StringBuilder()).append(___sample.substring(split)).finish();
+                    assertEquals(expected(___sample), output.toString(), ___sample);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void prefixHasWholeGroups() {
+        var prefix = Utf16LeBase64Encoder.prefix("abcd");
+        assertEquals(Utf16LeBase64Encoder.ENCODED_CHARS_PER_GROUP, prefix.getEncoded().length());
+    }
+
+    private static String largeText(final int length) {
+        final var text = new StringBuilder(length);
+        for (int idx = 0; text.length() < length; idx++) {
+            text.append(SAMPLES.get(idx % SAMPLES.size()));
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    @Test
+    public void encodeParallelMatchesSequential() {
+        final var pool = new ForkJoinPool(4);
+        try {
+            for (int extra = 0; extra < 4; extra++) {
+                final var text = largeText(300_001 + extra);
+                assertEquals(expected(text), Utf16LeBase64Encoder.encodeParallel(text, pool));
+            }
+            SAMPLES.forEach(___sample -> assertEquals(expected(___sample),
+                    Utf16LeBase64Encoder.encodeParallel(___sample, pool), ___sample));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void encodeAboveThreshold() {
+        final int threshold = Utf16LeBase64Encoder.getParallelThreshold();
+        try {
+            PowerShell.setParallelEncodingThreshold(1);
+            final var text = largeText(200_000);
+            assertEquals(expected(text), PowerShell.encodeText(text));
+        }
+        finally {
+            PowerShell.setParallelEncodingThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void invalidParallelThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> PowerShell.setParallelEncodingThreshold(0));
+    }
+
+    @Test
+    public void encodedLength() {
+        SAMPLES.forEach(___sample -> assertEquals(expected(___sample).length(),
+                Utf16LeBase64Encoder.encodedLength(___sample.length())));
+    }
+}